@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Alternate object stores: other, read-only .gitlet directories on this
+ *  machine whose blobs and commits this repository may borrow. Their paths
+ *  are stored one per line in .gitlet/alternates. An object missing from
+ *  BLOB_DIR or COMMIT_DIR is looked up in each alternate in turn and copied
+ *  in on first access, so many working repositories can share one large
+ *  object store and only ever hold the objects they actually use.
+ *  @author Yang Lyu
+ */
+class Alternates {
+
+    /** The list of alternate .gitlet directories. */
+    static final File ALTERNATES_FILE = Utils.join(Repository.GITLET_DIR, "alternates");
+
+    /** The alternate .gitlet directories, in lookup order; null until first use. */
+    private static List<File> alternates;
+
+    /** The .gitlet directory of the repository at PATH (either the repository
+     *  root or its .gitlet directory), or null if there is none. */
+    static File gitletDir(String path) {
+        File dir = new File(path);
+        if (Utils.join(dir, ".gitlet").isDirectory()) {
+            dir = Utils.join(dir, ".gitlet");
+        }
+        return Utils.join(dir, "blobs").isDirectory() ? dir.getAbsoluteFile() : null;
+    }
+
+    /** The alternate .gitlet directories, in lookup order. */
+    static List<File> list() {
+        if (alternates == null) {
+            alternates = new ArrayList<>();
+            if (ALTERNATES_FILE.isFile()) {
+                for (String line : Utils.readContentsAsString(ALTERNATES_FILE).split("\n")) {
+                    if (!line.isEmpty()) {
+                        alternates.add(new File(line));
+                    }
+                }
+            }
+        }
+        return alternates;
+    }
+
+    /** Add the .gitlet directory DIR as an alternate. */
+    static void add(File dir) {
+        StringBuilder contents = new StringBuilder();
+        for (File alternate : list()) {
+            if (alternate.equals(dir)) {
+                return;
+            }
+            contents.append(alternate.getPath()).append("\n");
+        }
+        contents.append(dir.getPath()).append("\n");
+        Utils.writeContents(ALTERNATES_FILE, contents.toString());
+        alternates = null;
+    }
+
+    /** LOCAL is the object NAME in the subdirectory KIND ("blobs" or "commits") of
+     *  this repository. If it is missing, copy it in from the first alternate that
+     *  has it. Returns LOCAL either way. */
+    static File resolve(String kind, String name, File local) {
+        if (local.exists() || list().isEmpty()) {
+            return local;
+        }
+        for (File alternate : list()) {
+            File borrowed = Utils.join(alternate, kind, name);
+            if (borrowed.isFile()) {
+                long start = Trace.start();
+                ObjectTransfer.copyAtomically(borrowed, local);
+                Trace.end("alternate", start, local.length());
+                return local;
+            }
+        }
+        return local;
+    }
+
+    /** Names in the subdirectory KIND of every alternate that start with PREFIX. */
+    static List<String> namesStartingWith(String kind, String prefix) {
+        List<String> result = new ArrayList<>();
+        for (File alternate : list()) {
+            List<String> names = Utils.plainFilenamesIn(Utils.join(alternate, kind));
+            if (names != null) {
+                for (String name : names) {
+                    if (name.startsWith(prefix)) {
+                        result.add(name);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,471 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Benchmarks for Gitlet's hot paths, invoked as
+ *      java gitlet.Benchmark repo [--files=N] [--size=BYTES] [--depth=N]
+ *                                 [--branches=N] [--storage=BACKEND] [--json=FILE]
+ *      java gitlet.Benchmark scan [SIZE...] [--json=FILE]
+ *      java gitlet.Benchmark durability [--files=N] [--size=BYTES] [--changed=N]
+ *                                       [--json=FILE]
+ *  Benchmarks build synthetic repositories in the current directory, so run
+ *  them from an empty scratch directory.
+ *
+ *  repo: builds a repository with FILES files of SIZE bytes, a master history
+ *        DEPTH commits deep and BRANCHES branches forked from it, kept by the
+ *        storage BACKEND (loose, log or memory; default loose), then times each
+ *        Repository command and the helpers they lean on.
+ *  scan: compares the sequential read-every-commit loop used by find and
+ *        global-log with CommitScanner at several parallelism levels, on
+ *        COMMIT_DIRs of each SIZE (default 10000 100000 1000000).
+ *  durability: times a commit of CHANGED edited files, in a repository of FILES
+ *        files of SIZE bytes, under each durability mode.
+ *
+ *  This is a plain main class timed with System.nanoTime, not a JMH harness:
+ *  each benchmark runs once to warm up and then for ROUNDS fixed-length rounds,
+ *  and reports the best and mean ns/op. Results are printed as a table; with
+ *  --json they are also written to FILE so they can be tracked over time.
+ *  @author Yang Lyu
+ */
+public class Benchmark {
+
+    /** Marks a .gitlet directory as created by the benchmarks. */
+    private static final File MARKER = Utils.join(Repository.GITLET_DIR, "benchmark");
+    /** Timed rounds per benchmark. */
+    private static final int ROUNDS = 5;
+    /** Each round repeats the work until it has run at least this long. */
+    private static final long ROUND_NANOS = 100_000_000L;
+    /** Results of timed work land here so the JIT cannot discard the work. */
+    private static volatile Object sink;
+    /** Everything measured so far, in order. */
+    private static final List<Result> RESULTS = new ArrayList<>();
+    /** The real stdout; commands under test print into the void. */
+    private static final PrintStream STDOUT = System.out;
+
+    public static void main(String... args) {
+        if (args.length == 0) {
+            STDOUT.println("Usage: java gitlet.Benchmark repo|scan|durability [OPTIONS]");
+            return;
+        }
+        Map<String, String> opts = options(args);
+        checkScratchDir();
+        switch (args[0]) {
+            case "repo":
+                String storage = opts.getOrDefault("storage", Storage.LOOSE);
+                if (!Storage.valid(storage)) {
+                    STDOUT.println("No storage backend with that name exists.");
+                    return;
+                }
+                repo(intOption(opts, "files", 100), intOption(opts, "size", 4096),
+                        intOption(opts, "depth", 50), intOption(opts, "branches", 4), storage);
+                break;
+            case "scan":
+                scan(sizes(args, 10000, 100000, 1000000));
+                break;
+            case "durability":
+                durability(intOption(opts, "files", 100), intOption(opts, "size", 4096),
+                        intOption(opts, "changed", 10));
+                break;
+            default:
+                STDOUT.println("No benchmark with that name exists.");
+                return;
+        }
+        if (opts.containsKey("json")) {
+            writeJson(new File(opts.get("json")));
+        }
+    }
+
+    /* REPOSITORY COMMANDS AND HELPERS */
+
+    /** Build a synthetic repository and time each command and helper on it. */
+    private static void repo(int files, int size, int depth, int branches, String storage) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("files", files);
+        params.put("size", size);
+        params.put("depth", depth);
+        params.put("branches", branches);
+        params.put("storage", "\"" + storage + "\"");
+
+        buildRepo(files, size, depth, branches, storage);
+        String headID = Repository.getCommitIDFromPtr("head");
+        byte[] payload = randomBytes(size, 1);
+        int[] counter = {0};
+
+        measure("Utils.sha1", params, null, () -> Utils.sha1(payload));
+        if (Storage.loose()) { // file-level helpers under the loose layout
+            File headCommit = Utils.join(Repository.COMMIT_DIR, headID);
+            File someBlob = Utils.join(Repository.BLOB_DIR,
+                    Utils.plainFilenamesIn(Repository.BLOB_DIR).get(0));
+            File copyTarget = Utils.join(Repository.GITLET_DIR, "copy-target");
+            measure("Utils.readObject", params, null,
+                () -> Utils.readObject(headCommit, Commit.class));
+            measure("copyPaste", params, null, () -> {
+                Repository.copyPaste(someBlob, copyTarget);
+                return copyTarget;
+            });
+        }
+        measure("readCommit", params, null,
+            () -> Storage.objects().readObject(ObjectStore.COMMITS, headID, Commit.class));
+        measure("getCommitFromID-short", params, null,
+            () -> Repository.getCommitFromID(headID.substring(0, 8)));
+        measure("doBFS", params, null, () -> Repository.doBFS("master"));
+        measure("log", params, null, () -> {
+            Repository.log();
+            return null;
+        });
+        measure("add", params, () -> editFile("file0.txt", size, counter), () -> {
+            Repository.add("file0.txt");
+            return null;
+        });
+        measure("commit", params, () -> {
+            editFile("file0.txt", size, counter);
+            Repository.add("file0.txt");
+        }, () -> {
+            Repository.commit("edit " + counter[0]);
+            return null;
+        });
+
+        if (branches > 0) {
+            String[] targets = {"branch0", "master"};
+            measure("checkoutBranch", params, null, () -> {
+                Repository.checkoutBranch(targets[counter[0]++ % 2]);
+                return null;
+            });
+            if (counter[0] % 2 == 1) {
+                quietly(() -> Repository.checkoutBranch("master"));
+            }
+        }
+
+        // every merge gets fresh base and topic branches forked from a merge-free commit
+        String[] topic = new String[1];
+        measure("merge", params, () -> {
+            String base = "base" + counter[0];
+            topic[0] = "topic" + counter[0];
+            Repository.checkoutBranch("master");
+            Repository.branch(base);
+            Repository.branch(topic[0]);
+            Repository.checkoutBranch(topic[0]);
+            editFile("file1.txt", size, counter);
+            Repository.add("file1.txt");
+            Repository.commit("topic edit " + counter[0]);
+            Repository.checkoutBranch(base);
+            editFile("file2.txt", size, counter);
+            Repository.add("file2.txt");
+            Repository.commit("base edit " + counter[0]);
+        }, () -> {
+            Repository.merge(topic[0]);
+            return null;
+        });
+    }
+
+    /** Time a commit of CHANGED freshly edited files under each durability mode, in
+     *  a repository of FILES files of SIZE bytes. */
+    private static void durability(int files, int size, int changed) {
+        buildRepo(files, size, 1, 0, Storage.LOOSE);
+        int[] counter = {0};
+        for (String mode : new String[] {Durability.NONE, Durability.BATCH, Durability.STRICT}) {
+            Config.set("durability", mode);
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("files", files);
+            params.put("size", size);
+            params.put("changed", changed);
+            measure("commit-" + mode, params, () -> {
+                for (int f = 0; f < changed; f++) {
+                    String name = "file" + (f % files) + ".txt";
+                    editFile(name, size, counter);
+                    Repository.add(name);
+                }
+            }, () -> {
+                Repository.commit("durability edit " + counter[0]);
+                return null;
+            });
+        }
+        Config.set("durability", Durability.NONE);
+    }
+
+    /** Create a repository in the scratch directory: FILES files of SIZE bytes,
+     *  DEPTH commits on master, and BRANCHES branches each one commit ahead of
+     *  an evenly spaced commit on master, kept by the storage backend STORAGE. */
+    private static void buildRepo(int files, int size, int depth, int branches,
+                                  String storage) {
+        wipeScratchDir();
+        quietly(() -> new Repository(HashAlgorithm.SHA1, storage));
+        Utils.writeContents(MARKER, "");
+
+        for (int f = 0; f < files; f++) {
+            Utils.writeContents(Utils.join(Repository.CWD, "file" + f + ".txt"),
+                    randomBytes(size, f));
+            Repository.add("file" + f + ".txt");
+        }
+        Repository.commit("synthetic base");
+
+        int[] counter = {0};
+        int forkEvery = branches == 0 ? Integer.MAX_VALUE : Math.max(1, depth / branches);
+        int forked = 0;
+        for (int d = 1; d < depth; d++) {
+            if (d % forkEvery == 0 && forked < branches) {
+                Repository.branch("branch" + forked);
+                forked += 1;
+            }
+            String name = "file" + (d % files) + ".txt";
+            editFile(name, size, counter);
+            Repository.add(name);
+            Repository.commit("synthetic commit " + d);
+        }
+        while (forked < branches) {
+            Repository.branch("branch" + forked);
+            forked += 1;
+        }
+
+        for (int b = 0; b < branches; b++) {
+            Repository.checkoutBranch("branch" + b);
+            editFile("branch" + b + ".txt", size, counter);
+            Repository.add("branch" + b + ".txt");
+            Repository.commit("branch commit " + b);
+        }
+        if (branches > 0) {
+            Repository.checkoutBranch("master");
+        }
+    }
+
+    /** Overwrite NAME in the working directory with fresh contents. */
+    private static void editFile(String name, int size, int[] counter) {
+        counter[0] += 1;
+        Utils.writeContents(Utils.join(Repository.CWD, name), randomBytes(size, counter[0]),
+                "edit " + counter[0] + "\n");
+    }
+
+    /* SCAN */
+
+    /** Time sequential and parallel scans of COMMIT_DIR at each of SIZES. */
+    private static void scan(int[] sizes) {
+        LooseStore store = new LooseStore();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] levels = {2, 4, cores};
+
+        for (int size : sizes) {
+            growCommits(size);
+            List<String> ids = Utils.plainFilenamesIn(Repository.COMMIT_DIR);
+            String target = "synthetic commit " + (size / 2);
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("commits", size);
+
+            measure("scan-sequential", params, null, () -> {
+                int found = 0;
+                for (String id : ids) {
+                    Commit commit = Utils.readObject(Utils.join(Repository.COMMIT_DIR, id),
+                            Commit.class);
+                    if (commit.getMessage().equals(target)) {
+                        found += 1;
+                    }
+                }
+                return found;
+            });
+            for (int level : levels) {
+                measure("scan-parallel-" + level, params, null,
+                    () -> CommitScanner.scan(store, ids,
+                        (id, commit) -> commit.getMessage().equals(target) ? id : null,
+                        level));
+            }
+        }
+    }
+
+    /** Add synthetic commits, each tracking a handful of files, until COMMIT_DIR holds SIZE. */
+    private static void growCommits(int size) {
+        Repository.COMMIT_DIR.mkdirs();
+        Utils.writeContents(MARKER, "");
+        int have = Utils.plainFilenamesIn(Repository.COMMIT_DIR).size();
+        String parent = null;
+        for (int i = have; i < size; i++) {
+            Commit commit = new Commit("synthetic commit " + i, parent);
+            for (int f = 0; f < 8; f++) {
+                commit.trackNewFile("file" + f + ".txt", Utils.sha1("blob " + i + " " + f));
+            }
+            commit.storeTree(new LooseStore());
+            String id = Utils.sha1(Utils.serialize(commit));
+            Utils.writeObject(Utils.join(Repository.COMMIT_DIR, id), commit);
+            parent = id;
+        }
+    }
+
+    /* SCRATCH DIRECTORY */
+
+    /** Exit unless the current directory is empty or holds an earlier benchmark repo. */
+    private static void checkScratchDir() {
+        String[] present = Repository.CWD.list();
+        if (present != null && present.length > 0 && !MARKER.exists()) {
+            STDOUT.println("Run benchmarks from an empty scratch directory.");
+            System.exit(0);
+        }
+    }
+
+    /** Delete the benchmark repository and every file beside it. */
+    private static void wipeScratchDir() {
+        deleteTree(Repository.GITLET_DIR);
+        for (String name : Utils.plainFilenamesIn(Repository.CWD)) {
+            Utils.join(Repository.CWD, name).delete();
+        }
+    }
+
+    /** Delete FILE, recursing into directories. */
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    /* TIMING */
+
+    /** Something to time; returns a value so the work cannot be optimized away. */
+    interface Workload {
+        Object run();
+    }
+
+    /** One measured benchmark. */
+    private static class Result {
+        String name;
+        Map<String, Object> params;
+        double bestNanos;
+        double meanNanos;
+        long ops;
+    }
+
+    /** Time WORK, running SETUP (if not null) untimed before every call. Each of
+     *  ROUNDS rounds repeats the work until ROUND_NANOS have been spent in it; the
+     *  best and mean time per call are recorded and printed. */
+    private static void measure(String name, Map<String, Object> params,
+                                Runnable setup, Workload work) {
+        quietly(() -> {
+            if (setup != null) {
+                setup.run();
+            }
+            sink = work.run();
+        });
+
+        double best = Double.MAX_VALUE;
+        double total = 0;
+        long ops = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long spent = 0;
+            long calls = 0;
+            while (spent < ROUND_NANOS) {
+                if (setup != null) {
+                    quietly(setup);
+                }
+                PrintStream saved = silence();
+                long start = System.nanoTime();
+                sink = work.run();
+                spent += System.nanoTime() - start;
+                System.setOut(saved);
+                calls += 1;
+            }
+            best = Math.min(best, (double) spent / calls);
+            total += spent;
+            ops += calls;
+        }
+
+        Result result = new Result();
+        result.name = name;
+        result.params = params;
+        result.bestNanos = best;
+        result.meanNanos = total / ops;
+        result.ops = ops;
+        RESULTS.add(result);
+        STDOUT.printf("%-24s %-44s best %12.1f us   mean %12.1f us   (%d ops)%n",
+                name, params, best / 1e3, result.meanNanos / 1e3, ops);
+    }
+
+    /** Run ACTION with stdout discarded. */
+    private static void quietly(Runnable action) {
+        PrintStream saved = silence();
+        try {
+            action.run();
+        } finally {
+            System.setOut(saved);
+        }
+    }
+
+    /** Point System.out at nothing, returning the stream it pointed at. */
+    private static PrintStream silence() {
+        PrintStream saved = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return saved;
+    }
+
+    /* OUTPUT */
+
+    /** Write every result to FILE as a JSON array. */
+    private static void writeJson(File file) {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < RESULTS.size(); i++) {
+            Result r = RESULTS.get(i);
+            json.append("  {\"benchmark\": \"").append(r.name).append("\", \"params\": {");
+            int p = 0;
+            for (Map.Entry<String, Object> param : r.params.entrySet()) {
+                json.append(p++ == 0 ? "" : ", ");
+                json.append('"').append(param.getKey()).append("\": ").append(param.getValue());
+            }
+            json.append("}, \"unit\": \"ns/op\"");
+            json.append(String.format(", \"best\": %.1f, \"mean\": %.1f, \"ops\": %d}",
+                    r.bestNanos, r.meanNanos, r.ops));
+            json.append(i + 1 < RESULTS.size() ? ",\n" : "\n");
+        }
+        json.append("]\n");
+        Utils.writeContents(file, json.toString());
+    }
+
+    /* ARGUMENTS */
+
+    /** The --NAME=VALUE options in ARGS. */
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return opts;
+    }
+
+    /** The integer option NAME in OPTS, or DEFAULTVALUE if absent. */
+    private static int intOption(Map<String, String> opts, String name, int defaultValue) {
+        return opts.containsKey(name) ? Integer.parseInt(opts.get(name)) : defaultValue;
+    }
+
+    /** Integers in ARGS after the benchmark name, or DEFAULTS if there are none. */
+    private static int[] sizes(String[] args, int... defaults) {
+        List<Integer> given = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                given.add(Integer.parseInt(args[i]));
+            }
+        }
+        if (given.isEmpty()) {
+            return defaults;
+        }
+        int[] result = new int[given.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = given.get(i);
+        }
+        return result;
+    }
+
+    /** SIZE pseudo-random bytes determined by SEED. */
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.function.Function;
+
+/** The state of a bisect session, kept in .gitlet/bisect between commands.
+ *  The commits still suspected are those reachable from the bad commit but
+ *  from no good one, counting merge parents, taken from the reachability
+ *  bitmaps. Each step tests the suspect whose ancestors make up closest to
+ *  half of the suspects, so either answer rules out about half of them and a
+ *  search over n commits needs about log2(n) tests. Candidates are checked out
+ *  on the temporary branch "bisect", changing only the files that differ.
+ *  @author Yang Lyu
+ */
+class Bisect implements Serializable {
+
+    /** The serialized session. */
+    static final File STATE_FILE = Utils.join(Repository.GITLET_DIR, "bisect");
+    /** The branch candidates are checked out on. */
+    static final String BRANCH = "bisect";
+
+    /** branch checked out when the session started */
+    final String original;
+    /** the bad commit; null until one is marked */
+    String bad;
+    /** commits marked good */
+    final ArrayList<String> good = new ArrayList<>();
+    /** commits that could not be tested */
+    final ArrayList<String> skipped = new ArrayList<>();
+
+    Bisect(String original) {
+        this.original = original;
+    }
+
+    /** Is a session underway? */
+    static boolean exists() {
+        return STATE_FILE.isFile();
+    }
+
+    /** Load the session. */
+    static Bisect load() {
+        return Utils.readObject(STATE_FILE, Bisect.class);
+    }
+
+    /** Write the session. */
+    void save() {
+        Utils.writeObject(STATE_FILE, this);
+    }
+
+    /** End the session. */
+    static void finish() {
+        STATE_FILE.delete();
+    }
+
+    /** Mark commit ID as good (GOOD) or bad, replacing any earlier bad commit. */
+    void mark(String id, boolean isGood) {
+        if (isGood) {
+            good.add(id);
+        } else {
+            bad = id;
+        }
+    }
+
+    /** Numbers in REACH of the suspects: reachable from the bad commit and from
+     *  no good one. PARENTSOF reads the parents of a commit. */
+    CompressedBitmap suspects(Reachability reach, Function<ObjectId, ObjectId[]> parentsOf) {
+        CompressedBitmap result = reach.reach(ObjectId.fromHex(bad), parentsOf);
+        for (String id : good) {
+            result = result.andNot(reach.reach(ObjectId.fromHex(id), parentsOf));
+        }
+        return result;
+    }
+
+    /** Numbers of the SUSPECTS still worth testing: all but the bad commit and
+     *  the skipped ones. */
+    CompressedBitmap testable(CompressedBitmap suspects, Reachability reach,
+                              Function<ObjectId, ObjectId[]> parentsOf) {
+        CompressedBitmap excluded = new CompressedBitmap();
+        excluded.add(reach.number(ObjectId.fromHex(bad), parentsOf));
+        for (String id : skipped) {
+            excluded.add(reach.number(ObjectId.fromHex(id), parentsOf));
+        }
+        return suspects.andNot(excluded);
+    }
+
+    /** The member of TESTABLE whose ancestors among SUSPECTS come closest to half
+     *  of SUSPECTS, and how many suspects would remain in the worse case. The
+     *  ancestor counts are found in one pass over SUSPECTS in number order, so
+     *  parents come first: every ancestor of a suspect that is itself suspect is
+     *  reached through its suspect parents, so a commit with one such parent has
+     *  one more than that parent, and only merges count a bitmap intersection. */
+    static int[] midpoint(CompressedBitmap suspects, CompressedBitmap testable,
+                          Reachability reach) {
+        int total = suspects.cardinality();
+        int[] ancestors = new int[reach.size()];
+        suspects.forEach(n -> {
+            int only = -1;
+            int found = 0;
+            for (int p : reach.parents(n)) {
+                if (suspects.contains(p)) {
+                    only = p;
+                    found += 1;
+                }
+            }
+            if (found == 0) {
+                ancestors[n] = 1;
+            } else if (found == 1) {
+                ancestors[n] = ancestors[only] + 1;
+            } else {
+                ancestors[n] = reach.reach(n).andCardinality(suspects);
+            }
+        });
+        int[] best = {-1, Integer.MAX_VALUE};
+        testable.forEach(n -> {
+            int worse = Math.max(ancestors[n], total - ancestors[n]);
+            if (worse < best[1]) {
+                best[0] = n;
+                best[1] = worse;
+            }
+        });
+        return best;
+    }
+}
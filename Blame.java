@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/** Line origins of one version of a file, for blame.
+ *  For each line it records the commit that introduced it. Results are cached
+ *  in .gitlet/blame under the blob hash of the version, and a new version is
+ *  derived from its predecessor's cached origins with one diff, so a blame only
+ *  has to process the versions added since the last one. The same blob can be
+ *  reached on other branches, so a cached entry is only used where every
+ *  commit it names is an ancestor of the commit being blamed.
+ *  @author Yang Lyu
+ */
+class Blame implements Serializable {
+
+    /** Where cached results are stored, one file per blob. */
+    static final File CACHE_DIR = Utils.join(Repository.GITLET_DIR, "blame");
+
+    /** Distinct commits the lines come from. */
+    private final String[] commits;
+    /** Per line, the index in COMMITS of the commit that introduced it. */
+    private final int[] lines;
+
+    private Blame(String[] commits, int[] lines) {
+        this.commits = commits;
+        this.lines = lines;
+    }
+
+    /** Origins of a version of LINECOUNT lines that all come from COMMIT. */
+    static Blame whole(String commit, int lineCount) {
+        return new Blame(new String[] {commit}, new int[lineCount]);
+    }
+
+    /** The cached origins of blob HASH, or null if there are none. */
+    static Blame cached(String hash) {
+        File file = Utils.join(CACHE_DIR, hash);
+        if (!file.isFile()) {
+            return null;
+        }
+        Trace.hit("blame");
+        return Utils.readObject(file, Blame.class);
+    }
+
+    /** Cache these origins as those of blob HASH. */
+    void save(String hash) {
+        CACHE_DIR.mkdir();
+        Utils.writeObject(Utils.join(CACHE_DIR, hash), this);
+    }
+
+    /** Origins of the next version, made by COMMIT, where KEPT gives for each of
+     *  its lines the line of this version it was kept from, or -1. */
+    Blame next(String commit, int[] kept) {
+        List<String> newCommits = new ArrayList<>();
+        HashMap<String, Integer> index = new HashMap<>();
+        int[] newLines = new int[kept.length];
+        for (int j = 0; j < kept.length; j++) {
+            String origin = kept[j] < 0 ? commit : commits[lines[kept[j]]];
+            Integer at = index.get(origin);
+            if (at == null) {
+                at = newCommits.size();
+                index.put(origin, at);
+                newCommits.add(origin);
+            }
+            newLines[j] = at;
+        }
+        return new Blame(newCommits.toArray(new String[0]), newLines);
+    }
+
+    /** Are all the commits these origins name among ANCESTORS, numbered as in
+     *  REACH? PARENTSOF reads the parents of a commit. */
+    boolean within(CompressedBitmap ancestors, Reachability reach,
+                   Function<ObjectId, ObjectId[]> parentsOf) {
+        for (String commit : commits) {
+            if (!ancestors.contains(reach.number(ObjectId.fromHex(commit), parentsOf))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Number of lines. */
+    int size() {
+        return lines.length;
+    }
+
+    /** The commit that introduced line I (from 0). */
+    String origin(int i) {
+        return commits[lines[i]];
+    }
+}
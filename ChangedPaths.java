@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** Bloom filters over the paths a commit changed relative to its first parent.
+ *  Each commit made by commit or merge carries one in its header, so
+ *  log -- <path> can skip every commit whose filter rules the path out without
+ *  loading any file table; only possible matches are checked exactly. Filters
+ *  use BITS_PER_PATH bits per changed path and HASHES probes derived from one
+ *  64-bit FNV-1a hash by double hashing. Commits that change more than
+ *  MAX_PATHS paths, and commits written before filters existed, have none and
+ *  are always checked.
+ *  @author Yang Lyu
+ */
+class ChangedPaths {
+
+    /** Filter size per changed path, and number of probes per path. */
+    private static final int BITS_PER_PATH = 10, HASHES = 7;
+    /** Commits changing more paths than this get no filter. */
+    static final int MAX_PATHS = 512;
+
+    /** A filter holding every path in PATHS, or null if there are too many. */
+    static long[] filterOf(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        long[] filter = new long[Math.max(1, (paths.size() * BITS_PER_PATH + 63) / 64)];
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = probe(hash, i, filter.length * 64);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    /** Might PATH be in FILTER? Always true for a missing filter. */
+    static boolean mightContain(long[] filter, String path) {
+        if (filter == null) {
+            return true;
+        }
+        long hash = hash(path);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = probe(hash, i, filter.length * 64);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Bit for probe I of a path hashing to HASH, in a filter of SIZE bits. */
+    private static int probe(long hash, int i, int size) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return Math.floorMod(h1 + i * h2, size);
+    }
+
+    /** 64-bit FNV-1a hash of the UTF-8 bytes of PATH; fixed, since filters are stored. */
+    private static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/** The plan of a branch switch, kept on disk while it is being applied.
+ *  checkout, reset and fast-forward merges first write the full list of
+ *  working-tree changes and pointer moves to .gitlet/checkout/plan, then apply
+ *  the file changes in batches, recording after each batch how many steps are
+ *  done in .gitlet/checkout/progress. Each step only says what a file should
+ *  end up as, so replaying a step is harmless. If the process dies, the next
+ *  checkout --continue picks up at the last recorded batch, and
+ *  checkout --abort puts back what the applied steps replaced. The pointers
+ *  move only after every file is in place, and the journal is removed last.
+ *  @author Yang Lyu
+ */
+class CheckoutJournal implements Serializable {
+
+    /** Directory holding the plan and progress files while a switch is underway. */
+    static final File JOURNAL_DIR = Utils.join(Repository.GITLET_DIR, "checkout");
+    /** The serialized plan. */
+    private static final File PLAN_FILE = Utils.join(JOURNAL_DIR, "plan");
+    /** Number of steps applied so far, as text. */
+    private static final File PROGRESS_FILE = Utils.join(JOURNAL_DIR, "progress");
+    /** Steps applied between progress updates. */
+    static final int BATCH = 256;
+
+    /** file name per step */
+    final ArrayList<String> names = new ArrayList<>();
+    /** blob the file should hold after the step; null to delete it */
+    final ArrayList<String> newBlobs = new ArrayList<>();
+    /** blob the file held before the step; null if it was not tracked */
+    final ArrayList<String> oldBlobs = new ArrayList<>();
+    /** pointers to set once every step is applied, in order */
+    final LinkedHashMap<String, String> newPointers = new LinkedHashMap<>();
+    /** values those pointers had before the switch; null if they did not exist */
+    final LinkedHashMap<String, String> oldPointers = new LinkedHashMap<>();
+
+    /** Is a switch underway? A plan that cannot be read is dropped with a
+     *  warning, since nothing could be continued or undone from it. */
+    static boolean exists() {
+        if (!PLAN_FILE.isFile()) {
+            return false;
+        }
+        if (load() == null) {
+            System.err.println("Warning: ignoring an unreadable checkout plan.");
+            finish();
+            return false;
+        }
+        return true;
+    }
+
+    /** Load the pending plan, or null if it cannot be read. */
+    static CheckoutJournal load() {
+        try {
+            return Utils.readObject(PLAN_FILE, CheckoutJournal.class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Add a step making NAME hold NEWBLOB (null: absent), where it held OLDBLOB. */
+    void step(String name, String newBlob, String oldBlob) {
+        names.add(name);
+        newBlobs.add(newBlob);
+        oldBlobs.add(oldBlob);
+    }
+
+    /** Number of steps. */
+    int size() {
+        return names.size();
+    }
+
+    /** Write the plan, with no steps applied yet. It is written to a temporary
+     *  file and renamed into place, so it is either whole or absent. */
+    void begin() {
+        JOURNAL_DIR.mkdirs();
+        Utils.writeContents(PROGRESS_FILE, "0");
+        Durability.writeRef(PLAN_FILE, this);
+    }
+
+    /** Number of steps known to be applied. */
+    static int progress() {
+        if (!PROGRESS_FILE.isFile()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(Utils.readContentsAsString(PROGRESS_FILE).trim());
+        } catch (NumberFormatException e) {
+            return 0; // torn write: everything replays from the start
+        }
+    }
+
+    /** Record that the first DONE steps are applied. */
+    static void recordProgress(int done) {
+        Utils.writeContents(PROGRESS_FILE, Integer.toString(done));
+    }
+
+    /** Remove the journal, ending the switch. */
+    static void finish() {
+        PROGRESS_FILE.delete();
+        PLAN_FILE.delete();
+        new File(PLAN_FILE.getPath() + ".partial").delete(); // left by a crash in begin
+        JOURNAL_DIR.delete();
+    }
+}
@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/** Chunked storage for large blobs.
+ *  With the config option chunking set to true, a committed file of at least
+ *  THRESHOLD bytes is cut into variable-size chunks with FastCDC: a gear
+ *  rolling hash picks cut points from the content itself, so an edit only
+ *  changes the chunks around it and every other chunk keeps its name. Chunks
+ *  are stored once each in .gitlet/chunks, named by their hash, and the blob
+ *  itself becomes a manifest in .gitlet/manifests listing its chunks in order.
+ *  The blob keeps the name of its whole contents, so commits look the same
+ *  either way. Restoring a file writes the chunks into place in parallel.
+ *  @author Yang Lyu
+ */
+class ChunkStore {
+
+    /** Directories of manifests and chunks. */
+    static final File MANIFEST_DIR = Utils.join(Repository.GITLET_DIR, "manifests");
+    static final File CHUNK_DIR = Utils.join(Repository.GITLET_DIR, "chunks");
+    /** Files smaller than this are stored whole. */
+    static final long THRESHOLD = 1L << 20;
+
+    /** Chunk size bounds, and the size chunks are normalized towards. */
+    private static final int MIN_SIZE = 16 * 1024, AVG_SIZE = 64 * 1024, MAX_SIZE = 256 * 1024;
+    /** Cut-point masks: harder to hit below AVG_SIZE, easier above it. */
+    private static final long MASK_SMALL = topBits(18), MASK_LARGE = topBits(14);
+    /** Random value per byte for the gear hash; fixed, so cut points are stable. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** A blob stored as chunks. */
+    static class Manifest implements Serializable {
+        /** chunk names, in order */
+        final String[] chunks;
+        /** chunk lengths, in order */
+        final int[] lengths;
+
+        Manifest(String[] chunks, int[] lengths) {
+            this.chunks = chunks;
+            this.lengths = lengths;
+        }
+    }
+
+    /** Is chunking turned on for this repository? */
+    static boolean enabled() {
+        return Boolean.parseBoolean(Config.get("chunking", "false"));
+    }
+
+    /** Should SOURCE be stored as chunks? */
+    static boolean wants(File source) {
+        return source.length() >= THRESHOLD && enabled();
+    }
+
+    /** Is the blob HASH stored as chunks (here or in an alternate)? */
+    static boolean has(String hash) {
+        return manifestFile(hash).exists();
+    }
+
+    /** Store SOURCE as the chunked blob HASH, writing only chunks not stored yet. */
+    static void write(File source, String hash) {
+        long start = Trace.start();
+        ByteBuffer contents = MappedObjects.buffer(source, false);
+        List<String> names = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        CHUNK_DIR.mkdir();
+        int offset = 0;
+        while (offset < contents.limit()) {
+            int length = cut(contents, offset);
+            ByteBuffer chunk = contents.duplicate();
+            chunk.position(offset).limit(offset + length);
+            String name = HashAlgorithm.current().hash(chunk.slice());
+            File target = Utils.join(CHUNK_DIR, name);
+            if (!target.exists()) {
+                chunk.position(offset);
+                ObjectTransfer.writeAtomically(chunk, target);
+            }
+            names.add(name);
+            lengths.add(length);
+            offset += length;
+        }
+        int[] lengthArray = new int[lengths.size()];
+        for (int i = 0; i < lengthArray.length; i++) {
+            lengthArray[i] = lengths.get(i);
+        }
+        MANIFEST_DIR.mkdir();
+        // whole or absent: a torn manifest would make has() claim the blob forever
+        ObjectTransfer.writeAtomically(ByteBuffer.wrap(Utils.serialize(
+                new Manifest(names.toArray(new String[0]), lengthArray))),
+                Utils.join(MANIFEST_DIR, hash));
+        Trace.end("chunkWrite", start, contents.limit());
+    }
+
+    /** Rebuild the chunked blob HASH as DESTINATION, writing its chunks in parallel. */
+    static long restore(String hash, File destination) {
+        long start = Trace.start();
+        Manifest manifest = read(hash);
+        long[] offsets = new long[manifest.chunks.length + 1];
+        for (int i = 0; i < manifest.chunks.length; i++) {
+            offsets[i + 1] = offsets[i] + manifest.lengths[i];
+        }
+        ForkJoinPool pool = new ForkJoinPool(CommitScanner.defaultParallelism());
+        try (FileChannel out = FileChannel.open(destination.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            pool.submit(() -> IntStream.range(0, manifest.chunks.length).parallel().forEach(i -> {
+                ByteBuffer chunk = MappedObjects.buffer(chunkFile(manifest.chunks[i]), true);
+                long position = offsets[i];
+                try {
+                    while (chunk.hasRemaining()) {
+                        position += out.write(chunk, position);
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            })).join();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        Trace.end("chunkRestore", start, offsets[manifest.chunks.length]);
+        return offsets[manifest.chunks.length];
+    }
+
+    /** The contents of the chunked blob HASH. */
+    static byte[] readContents(String hash) {
+        Manifest manifest = read(hash);
+        ByteBuffer result = ByteBuffer.allocate(IntStream.of(manifest.lengths).sum());
+        for (String chunk : manifest.chunks) {
+            result.put(MappedObjects.buffer(chunkFile(chunk), true));
+        }
+        return result.array();
+    }
+
+    /** The manifest of the chunked blob HASH. */
+    static Manifest read(String hash) {
+        return Utils.readObject(manifestFile(hash), Manifest.class);
+    }
+
+    /** The manifest of blob HASH, borrowed from an alternate if need be. */
+    private static File manifestFile(String hash) {
+        return Alternates.resolve("manifests", hash, Utils.join(MANIFEST_DIR, hash));
+    }
+
+    /** The chunk NAME, borrowed from an alternate if need be. */
+    private static File chunkFile(String name) {
+        return Alternates.resolve("chunks", name, Utils.join(CHUNK_DIR, name));
+    }
+
+    /** Length of the chunk of CONTENTS starting at OFFSET (FastCDC with
+     *  normalized chunking). */
+    static int cut(ByteBuffer contents, int offset) {
+        int remaining = contents.limit() - offset;
+        if (remaining <= MIN_SIZE) {
+            return remaining;
+        }
+        int end = Math.min(remaining, MAX_SIZE);
+        int normal = Math.min(end, AVG_SIZE);
+        long fingerprint = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[contents.get(offset + i) & 0xff];
+            if ((fingerprint & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[contents.get(offset + i) & 0xff];
+            if ((fingerprint & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /** A mask of the top BITS bits of a long. */
+    private static long topBits(int bits) {
+        return -1L << (64 - bits);
+    }
+}
@@ -1,10 +1,15 @@
 package gitlet;
+import java.io.File;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.HashMap;
 
 /** Represents a gitlet commit object.
  *  Stores message, time, parent hashcode, and a hashmap(file name, hashcode).
+ *  The hashmap is kept apart from the commit, in .gitlet/trees under the hash of
+ *  its serialized form, so reading a commit for log, find or a graph walk only
+ *  reads the small header; the table is loaded the first time getTrackedFiles()
+ *  is called. Commits written before this keep their table inline.
  *  @author Yang Lyu
  */
 public class Commit implements Serializable, Dumpable {
@@ -14,6 +19,9 @@ public class Commit implements Serializable, Dumpable {
      * variable is used. We've provided one example for `message`.
      */
 
+    /** Pinned so commits written before new fields were added still deserialize. */
+    private static final long serialVersionUID = 3118470285077247508L;
+
     /**
      * The message of this Commit.
      */
@@ -21,6 +29,12 @@ public class Commit implements Serializable, Dumpable {
     private Date timeStamp;
     private String parent; // hashcode for parent commit
     private HashMap<String, String> trackedFiles; // map e.g. hello.txt to HASHCODE in blob folder
+    private String mergeParent; // hashcode for merged-in parent; null if not a merge (or older)
+    private String treeId; // hashcode of the stored file table; null if trackedFiles is inline
+    private long[] changedPaths; // Bloom filter of paths changed since parent; null if unknown
+
+    private transient HashMap<String, String> tree; // file table, once loaded from the tree store
+    private transient File treeDir; // tree store to load from; null for this repository's
 
     /**
      * Initial commit; only once.
@@ -42,6 +56,14 @@ public class Commit implements Serializable, Dumpable {
         this.trackedFiles = new HashMap<>();
     }
 
+    /**
+     * A merge commit, whose second parent is MERGEPARENT.
+     */
+    public Commit(String message, String parent, String mergeParent) {
+        this(message, parent);
+        this.mergeParent = mergeParent;
+    }
+
     /**
      * set what files to track
      */
@@ -50,10 +72,61 @@ public class Commit implements Serializable, Dumpable {
     }
 
     /**
-     * return instance variables
+     * Move the file table out of this commit into STORE, so that reading the
+     * commit no longer reads the table. Call before hashing the commit.
+     */
+    public void storeTree(ObjectStore store) {
+        byte[] table = Utils.serialize(this.trackedFiles);
+        this.treeId = HashAlgorithm.current().hash(table);
+        if (!store.has(ObjectStore.TREES, treeId)) {
+            store.write(ObjectStore.TREES, treeId, table);
+        }
+        this.tree = this.trackedFiles;
+        this.trackedFiles = null;
+    }
+
+    /**
+     * Load the file table from the tree store TREEDIR rather than this repository's.
      */
+    public void setTreeDir(File treeDir) {
+        this.treeDir = treeDir;
+    }
+
+    /**
+     * return instance variables; the file table is read on first use
+     */
+    @SuppressWarnings("unchecked")
     public HashMap<String, String> getTrackedFiles() {
-        return this.trackedFiles;
+        if (this.trackedFiles != null) { // inline table, or not stored yet
+            return this.trackedFiles;
+        }
+        if (this.tree == null && treeDir != null) {
+            this.tree = MappedObjects.readObject(Utils.join(treeDir, treeId), HashMap.class, true);
+        } else if (this.tree == null) {
+            this.tree = Storage.objects().readObject(ObjectStore.TREES, treeId, HashMap.class);
+        }
+        return this.tree;
+    }
+
+    /**
+     * record the Bloom filter of the paths changed since the first parent
+     */
+    public void setChangedPaths(long[] changedPaths) {
+        this.changedPaths = changedPaths;
+    }
+
+    /**
+     * return instance variables; null if the commit has no changed-path filter
+     */
+    public long[] getChangedPaths() {
+        return this.changedPaths;
+    }
+
+    /**
+     * return instance variables; null if the file table is stored inline
+     */
+    public String getTreeId() {
+        return this.treeId;
     }
 
     /**
@@ -77,14 +150,21 @@ public class Commit implements Serializable, Dumpable {
         return this.parent;
     }
 
+    /**
+     * return instance variables
+     */
+    public String getMergeParent() {
+        return this.mergeParent;
+    }
+
     @Override
     public void dump() {
         System.out.println("Parenet: " + getParent());
         System.out.println("Message: " + getMessage());
         System.out.println("contains files: ");
-        for (String key : this.trackedFiles.keySet()) {
+        for (String key : getTrackedFiles().keySet()) {
             System.out.print(key + ", id: ");
-            System.out.println(this.trackedFiles.get(key));
+            System.out.println(getTrackedFiles().get(key));
         }
     }
 }
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/** Parallel scan over the commits in an object store.
+ *  The id list is split across a ForkJoin pool; each task deserializes its slice
+ *  and applies a mapper, which returns null to drop a commit. Results are joined
+ *  left to right, so output order always follows the order of the ids given.
+ *  The parallelism level comes from the GITLET_PARALLELISM environment variable,
+ *  defaulting to the number of available processors.
+ *  @author Yang Lyu
+ */
+class CommitScanner {
+
+    /** Slices at most this long are scanned sequentially. */
+    private static final int SLICE = 256;
+    /** forEachOrdered hands results to the consumer in windows of this many ids. */
+    private static final int WINDOW = 8192;
+
+    /** Parallelism level used when none is given. */
+    static int defaultParallelism() {
+        String env = System.getenv("GITLET_PARALLELISM");
+        if (env != null) {
+            try {
+                return Math.max(1, Integer.parseInt(env));
+            } catch (NumberFormatException e) {
+                // fall through to the default
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Map every commit in IDS (read from STORE) through MAPPER using PARALLELISM
+     *  threads, returning the non-null results in the order of IDS. */
+    static <T> List<T> scan(ObjectStore store, List<String> ids,
+                            BiFunction<String, Commit, T> mapper, int parallelism) {
+        if (parallelism <= 1 || ids.size() <= SLICE) {
+            return new ScanTask<>(store, ids, mapper).scanSequentially();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new ScanTask<>(store, ids, mapper));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Same as scan with the default parallelism. */
+    static <T> List<T> scan(ObjectStore store, List<String> ids,
+                            BiFunction<String, Commit, T> mapper) {
+        return scan(store, ids, mapper, defaultParallelism());
+    }
+
+    /** Like scan, but hands results to CONSUMER window by window, so memory stays
+     *  bounded and the first results appear before the whole store is read. */
+    static <T> void forEachOrdered(ObjectStore store, List<String> ids,
+                                   BiFunction<String, Commit, T> mapper, Consumer<T> consumer) {
+        int parallelism = defaultParallelism();
+        for (int start = 0; start < ids.size(); start += WINDOW) {
+            List<String> window = ids.subList(start, Math.min(ids.size(), start + WINDOW));
+            for (T result : scan(store, window, mapper, parallelism)) {
+                consumer.accept(result);
+            }
+        }
+    }
+
+    /** Fork/join task over a slice of the id list. */
+    private static class ScanTask<T> extends RecursiveTask<List<T>> {
+        private final ObjectStore store;
+        private final List<String> ids;
+        private final BiFunction<String, Commit, T> mapper;
+
+        ScanTask(ObjectStore store, List<String> ids, BiFunction<String, Commit, T> mapper) {
+            this.store = store;
+            this.ids = ids;
+            this.mapper = mapper;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (ids.size() <= SLICE) {
+                return scanSequentially();
+            }
+            int mid = ids.size() / 2;
+            ScanTask<T> left = new ScanTask<>(store, ids.subList(0, mid), mapper);
+            ScanTask<T> right = new ScanTask<>(store, ids.subList(mid, ids.size()), mapper);
+            left.fork();
+            List<T> result = right.compute();
+            List<T> joined = left.join();
+            joined.addAll(result);
+            return joined;
+        }
+
+        /** Scan this slice on the calling thread. */
+        List<T> scanSequentially() {
+            List<T> result = new ArrayList<>();
+            for (String id : ids) {
+                Commit commit = store.readObject(ObjectStore.COMMITS, id, Commit.class);
+                T mapped = mapper.apply(id, commit);
+                if (mapped != null) {
+                    result.add(mapped);
+                }
+            }
+            return result;
+        }
+    }
+}
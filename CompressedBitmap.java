@@ -0,0 +1,322 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A compressed set of non-negative ints, organized like a roaring bitmap.
+ *  Values are split by their high 16 bits into chunks; each chunk stores its
+ *  low 16 bits either as a sorted char array, while it holds at most
+ *  ARRAY_LIMIT values, or as a 65536-bit bitmap once it is denser than that.
+ *  Sparse sets stay small and dense ones cost at most 8 KiB per chunk, while
+ *  union, difference and counting work chunk by chunk.
+ *  @author Yang Lyu
+ */
+class CompressedBitmap implements Serializable {
+
+    /** Chunks holding more values than this switch to the bitmap form. */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /** High 16 bits of each chunk, sorted. */
+    private char[] keys = new char[0];
+    /** Per chunk: a sorted char[] of low bits, or a long[1024] bitmap. */
+    private Object[] chunks = new Object[0];
+    /** Per chunk: number of values. */
+    private int[] counts = new int[0];
+
+    /** Add VALUE. */
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int i = Arrays.binarySearch(keys, key);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, key, new char[] {low}, 1);
+            return;
+        }
+        if (chunks[i] instanceof long[]) {
+            long[] bits = (long[]) chunks[i];
+            if ((bits[low >>> 6] & (1L << low)) == 0) {
+                bits[low >>> 6] |= 1L << low;
+                counts[i] += 1;
+            }
+            return;
+        }
+        char[] array = (char[]) chunks[i];
+        int at = Arrays.binarySearch(array, 0, counts[i], low);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        if (counts[i] == ARRAY_LIMIT) {
+            long[] bits = toBits(array, counts[i]);
+            bits[low >>> 6] |= 1L << low;
+            chunks[i] = bits;
+        } else {
+            if (counts[i] == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, 2 * array.length));
+                chunks[i] = array;
+            }
+            System.arraycopy(array, at, array, at + 1, counts[i] - at);
+            array[at] = low;
+        }
+        counts[i] += 1;
+    }
+
+    /** Is VALUE a member? */
+    boolean contains(int value) {
+        int i = Arrays.binarySearch(keys, (char) (value >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        return chunkContains(chunks[i], counts[i], (char) value);
+    }
+
+    /** Number of members. */
+    int cardinality() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** Number of members also in OTHER. */
+    int andCardinality(CompressedBitmap other) {
+        int total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int j = Arrays.binarySearch(other.keys, keys[i]);
+            if (j < 0) {
+                continue;
+            }
+            if (chunks[i] instanceof long[] && other.chunks[j] instanceof long[]) {
+                long[] mine = (long[]) chunks[i];
+                long[] theirs = (long[]) other.chunks[j];
+                for (int w = 0; w < mine.length; w++) {
+                    total += Long.bitCount(mine[w] & theirs[w]);
+                }
+            } else if (chunks[i] instanceof char[]) {
+                char[] mine = (char[]) chunks[i];
+                for (int k = 0; k < counts[i]; k++) {
+                    if (chunkContains(other.chunks[j], other.counts[j], mine[k])) {
+                        total += 1;
+                    }
+                }
+            } else {
+                char[] theirs = (char[]) other.chunks[j];
+                for (int k = 0; k < other.counts[j]; k++) {
+                    if (chunkContains(chunks[i], counts[i], theirs[k])) {
+                        total += 1;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Add every member of OTHER to this set. */
+    void or(CompressedBitmap other) {
+        for (int j = 0; j < other.keys.length; j++) {
+            int i = Arrays.binarySearch(keys, other.keys[j]);
+            if (i < 0) {
+                insertChunk(-i - 1, other.keys[j], copyChunk(other.chunks[j]), other.counts[j]);
+                continue;
+            }
+            if (chunks[i] instanceof char[] && other.chunks[j] instanceof char[]) {
+                char[] merged = union((char[]) chunks[i], counts[i],
+                        (char[]) other.chunks[j], other.counts[j]);
+                counts[i] = merged.length;
+                chunks[i] = merged.length > ARRAY_LIMIT ? toBits(merged, merged.length) : merged;
+                continue;
+            }
+            // one side is a bitmap, so the union is dense enough to stay one
+            long[] bits = chunks[i] instanceof long[]
+                ? (long[]) chunks[i] : toBits((char[]) chunks[i], counts[i]);
+            if (other.chunks[j] instanceof long[]) {
+                long[] theirs = (long[]) other.chunks[j];
+                for (int w = 0; w < bits.length; w++) {
+                    bits[w] |= theirs[w];
+                }
+            } else {
+                char[] theirs = (char[]) other.chunks[j];
+                for (int k = 0; k < other.counts[j]; k++) {
+                    bits[theirs[k] >>> 6] |= 1L << theirs[k];
+                }
+            }
+            chunks[i] = bits;
+            counts[i] = bitCount(bits);
+        }
+    }
+
+    /** A new set holding the members of this set that are not in OTHER. */
+    CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        result.keys = new char[keys.length];
+        result.chunks = new Object[keys.length];
+        result.counts = new int[keys.length];
+        int size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int j = Arrays.binarySearch(other.keys, keys[i]);
+            Object chunk;
+            int count;
+            if (j < 0) {
+                chunk = copyChunk(chunks[i]);
+                count = counts[i];
+            } else if (chunks[i] instanceof char[]) {
+                char[] mine = (char[]) chunks[i];
+                char[] kept = new char[counts[i]];
+                count = 0;
+                for (int k = 0; k < counts[i]; k++) {
+                    if (!chunkContains(other.chunks[j], other.counts[j], mine[k])) {
+                        kept[count++] = mine[k];
+                    }
+                }
+                chunk = kept;
+            } else {
+                long[] bits = ((long[]) chunks[i]).clone();
+                if (other.chunks[j] instanceof long[]) {
+                    long[] theirs = (long[]) other.chunks[j];
+                    for (int w = 0; w < bits.length; w++) {
+                        bits[w] &= ~theirs[w];
+                    }
+                } else {
+                    char[] theirs = (char[]) other.chunks[j];
+                    for (int k = 0; k < other.counts[j]; k++) {
+                        bits[theirs[k] >>> 6] &= ~(1L << theirs[k]);
+                    }
+                }
+                count = bitCount(bits);
+                chunk = count > ARRAY_LIMIT ? bits : toArray(bits, count);
+            }
+            if (count > 0) {
+                result.keys[size] = keys[i];
+                result.chunks[size] = chunk;
+                result.counts[size] = count;
+                size += 1;
+            }
+        }
+        result.keys = Arrays.copyOf(result.keys, size);
+        result.chunks = Arrays.copyOf(result.chunks, size);
+        result.counts = Arrays.copyOf(result.counts, size);
+        return result;
+    }
+
+    /** A copy of this set. */
+    CompressedBitmap copy() {
+        CompressedBitmap result = new CompressedBitmap();
+        result.or(this);
+        return result;
+    }
+
+    /** Call ACTION on every member, in increasing order. */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            int high = keys[i] << 16;
+            if (chunks[i] instanceof long[]) {
+                long[] bits = (long[]) chunks[i];
+                for (int w = 0; w < bits.length; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) chunks[i];
+                for (int k = 0; k < counts[i]; k++) {
+                    action.accept(high | array[k]);
+                }
+            }
+        }
+    }
+
+    /** Insert a chunk with KEY, contents CHUNK and COUNT values at position I. */
+    private void insertChunk(int i, char key, Object chunk, int count) {
+        char[] newKeys = new char[keys.length + 1];
+        Object[] newChunks = new Object[chunks.length + 1];
+        int[] newCounts = new int[counts.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        System.arraycopy(chunks, 0, newChunks, 0, i);
+        System.arraycopy(counts, 0, newCounts, 0, i);
+        newKeys[i] = key;
+        newChunks[i] = chunk;
+        newCounts[i] = count;
+        System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+        System.arraycopy(chunks, i, newChunks, i + 1, chunks.length - i);
+        System.arraycopy(counts, i, newCounts, i + 1, counts.length - i);
+        keys = newKeys;
+        chunks = newChunks;
+        counts = newCounts;
+    }
+
+    /** A copy of CHUNK, in whichever form it has. */
+    private static Object copyChunk(Object chunk) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        return ((char[]) chunk).clone();
+    }
+
+    /** Is LOW in CHUNK, which holds COUNT values? */
+    private static boolean chunkContains(Object chunk, int count, char low) {
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, count, low) >= 0;
+    }
+
+    /** The sorted union of the first ACOUNT values of A and the first BCOUNT of B. */
+    private static char[] union(char[] a, int aCount, char[] b, int bCount) {
+        char[] merged = new char[aCount + bCount];
+        int i = 0, j = 0, n = 0;
+        while (i < aCount && j < bCount) {
+            if (a[i] < b[j]) {
+                merged[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                merged[n++] = b[j++];
+            } else {
+                merged[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < aCount) {
+            merged[n++] = a[i++];
+        }
+        while (j < bCount) {
+            merged[n++] = b[j++];
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    /** Number of bits set in BITS. */
+    private static int bitCount(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /** The COUNT values set in BITS as a sorted array. */
+    private static char[] toArray(long[] bits, int count) {
+        char[] array = new char[count];
+        int k = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                array[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+
+    /** The first COUNT values of ARRAY as a 65536-bit bitmap. */
+    private static long[] toBits(char[] array, int count) {
+        long[] bits = new long[1024];
+        for (int k = 0; k < count; k++) {
+            bits[array[k] >>> 6] |= 1L << array[k];
+        }
+        return bits;
+    }
+}
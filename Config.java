@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/** Per-repository settings, stored as a properties file in .gitlet/config.
+ *  Settings are chosen at init or by later commands; a repository created
+ *  before a setting existed simply reads that setting's default.
+ *  @author Yang Lyu
+ */
+class Config {
+
+    /** The config file. */
+    static final File CONFIG_FILE = Utils.join(Repository.GITLET_DIR, "config");
+
+    /** Settings loaded from CONFIG_FILE; null until first use. */
+    private static Properties settings;
+
+    /** Return the setting KEY, or DEFAULTVALUE if it is not set. */
+    static synchronized String get(String key, String defaultValue) {
+        return load().getProperty(key, defaultValue);
+    }
+
+    /** Set KEY to VALUE and save the config file. */
+    static synchronized void set(String key, String value) {
+        load().setProperty(key, value);
+        save();
+    }
+
+    /** Remove the setting KEY and save the config file. */
+    static synchronized void remove(String key) {
+        load().remove(key);
+        save();
+    }
+
+    /** The setting KEY in the repository whose .gitlet directory is GITLETDIR,
+     *  or DEFAULTVALUE if it is not set. */
+    static String read(File gitletDir, String key, String defaultValue) {
+        Properties other = new Properties();
+        File file = Utils.join(gitletDir, "config");
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                other.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return other.getProperty(key, defaultValue);
+    }
+
+    /** Write the settings to CONFIG_FILE. */
+    private static void save() {
+        try (OutputStream out = new FileOutputStream(CONFIG_FILE)) {
+            settings.store(out, "gitlet repository settings");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The settings, read from disk on first use. */
+    private static Properties load() {
+        if (settings == null) {
+            settings = new Properties();
+            if (CONFIG_FILE.isFile()) {
+                try (InputStream in = new FileInputStream(CONFIG_FILE)) {
+                    settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+}
@@ -0,0 +1,349 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/** Unified diffs between two snapshots of the tracked files.
+ *  A snapshot is a map from file name to blob hash plus a way to read a file's
+ *  contents. Files whose hashes match are skipped without being read; the rest
+ *  are diffed in parallel, a window of files at a time, and each window is
+ *  printed in name order before the next one starts, so output streams and only
+ *  one window of file diffs is held at once. Lines are compared with Myers'
+ *  linear-space algorithm, which bisects on the middle snake instead of keeping
+ *  the whole edit graph.
+ *  @author Yang Lyu
+ */
+class Diff {
+
+    /** Unchanged lines shown around each change. */
+    private static final int CONTEXT = 3;
+    /** Files diffed in parallel before their output is printed. */
+    private static final int WINDOW = 64;
+    /** Bytes inspected for a NUL when deciding whether a file is binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** One side of a diff. */
+    static class Side {
+        /** file name -> blob hash, for every file on this side */
+        final Map<String, String> hashes;
+        /** reads the contents of a file on this side, by name */
+        final Function<String, byte[]> contents;
+
+        Side(Map<String, String> hashes, Function<String, byte[]> contents) {
+            this.hashes = hashes;
+            this.contents = contents;
+        }
+    }
+
+    /** Print the diff from OLD to NEW on OUT. */
+    static void print(PrintWriter out, Side old, Side now) {
+        TreeSet<String> names = new TreeSet<>(old.hashes.keySet());
+        names.addAll(now.hashes.keySet());
+        List<String> changed = new ArrayList<>();
+        for (String name : names) {
+            if (!Objects.equals(old.hashes.get(name), now.hashes.get(name))) {
+                changed.add(name);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(CommitScanner.defaultParallelism());
+        try {
+            for (int start = 0; start < changed.size(); start += WINDOW) {
+                List<ForkJoinTask<String>> window = new ArrayList<>();
+                for (String name : changed.subList(start, Math.min(changed.size(), start + WINDOW))) {
+                    window.add(pool.submit(() -> file(name,
+                        old.hashes.containsKey(name) ? old.contents.apply(name) : null,
+                        now.hashes.containsKey(name) ? now.contents.apply(name) : null)));
+                }
+                for (ForkJoinTask<String> task : window) {
+                    out.print(task.join());
+                }
+                out.flush();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** The diff of file NAME from contents A to contents B; null means absent. */
+    static String file(String name, byte[] a, byte[] b) {
+        long start = Trace.start();
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        out.println("diff --git a/" + name + " b/" + name);
+        if (a == null) {
+            out.println("new file");
+        } else if (b == null) {
+            out.println("deleted file");
+        }
+        if (isBinary(a) || isBinary(b)) {
+            out.println("Binary files " + (a == null ? "/dev/null" : "a/" + name) + " and "
+                    + (b == null ? "/dev/null" : "b/" + name) + " differ");
+        } else {
+            out.println("--- " + (a == null ? "/dev/null" : "a/" + name));
+            out.println("+++ " + (b == null ? "/dev/null" : "b/" + name));
+            hunks(out, lines(a), lines(b));
+        }
+        out.flush();
+        Trace.end("diff", start, (a == null ? 0 : a.length) + (b == null ? 0 : b.length));
+        return text.toString();
+    }
+
+    /** Lines of CONTENTS, each with its newline; the last may lack one. */
+    static List<String> lines(byte[] contents) {
+        List<String> result = new ArrayList<>();
+        if (contents == null) {
+            return result;
+        }
+        String s = new String(contents, StandardCharsets.UTF_8);
+        int from = 0;
+        while (from < s.length()) {
+            int end = s.indexOf('\n', from);
+            end = end < 0 ? s.length() : end + 1;
+            result.add(s.substring(from, end));
+            from = end;
+        }
+        return result;
+    }
+
+    /** Does CONTENTS look binary (a NUL byte near the start)? */
+    private static boolean isBinary(byte[] contents) {
+        if (contents == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(contents.length, BINARY_PROBE); i++) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** For each line of contents B, the index of the line of contents A it was kept
+     *  from, or -1 if it was added going from A to B. */
+    static int[] keptLines(byte[] a, byte[] b) {
+        List<String> x = lines(a), y = lines(b);
+        boolean[][] edits = compare(x, y);
+        int[] kept = new int[y.size()];
+        int i = 0;
+        for (int j = 0; j < kept.length; j++) {
+            if (edits[1][j]) {
+                kept[j] = -1;
+                continue;
+            }
+            while (edits[0][i]) {
+                i += 1;
+            }
+            kept[j] = i++;
+        }
+        return kept;
+    }
+
+    /** Lines of A to remove and lines of B to add to turn A into B. */
+    private static boolean[][] compare(List<String> a, List<String> b) {
+        // intern lines so the comparison works on ints
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] x = new int[a.size()];
+        int[] y = new int[b.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = ids.computeIfAbsent(a.get(i), k -> ids.size());
+        }
+        for (int j = 0; j < y.length; j++) {
+            y[j] = ids.computeIfAbsent(b.get(j), k -> ids.size());
+        }
+        boolean[] removed = new boolean[x.length];
+        boolean[] added = new boolean[y.length];
+        new Myers(x, y, removed, added).compare(0, x.length, 0, y.length);
+        return new boolean[][] {removed, added};
+    }
+
+    /** Print the hunks turning lines A into lines B. */
+    private static void hunks(PrintWriter out, List<String> a, List<String> b) {
+        boolean[][] edits = compare(a, b);
+        boolean[] removed = edits[0], added = edits[1];
+
+        // the edit script: for each step, the line of A and of B it starts at
+        List<int[]> script = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < a.size() || j < b.size()) {
+            char op = i < a.size() && removed[i] ? '-' : j < b.size() && added[j] ? '+' : ' ';
+            script.add(new int[] {op, i, j});
+            if (op != '+') {
+                i += 1;
+            }
+            if (op != '-') {
+                j += 1;
+            }
+        }
+
+        int k = 0;
+        while (k < script.size()) {
+            if (script.get(k)[0] == ' ') {
+                k += 1;
+                continue;
+            }
+            // a hunk runs until CONTEXT unchanged steps on either side of its last change
+            int first = Math.max(0, k - CONTEXT);
+            int last = k;
+            for (int m = k; m < script.size() && m <= last + 2 * CONTEXT; m++) {
+                if (script.get(m)[0] != ' ') {
+                    last = m;
+                }
+            }
+            int end = Math.min(script.size(), last + CONTEXT + 1);
+            printHunk(out, script.subList(first, end), a, b);
+            k = end;
+        }
+    }
+
+    /** Print the steps of STEPS as one hunk over lines A and B. */
+    private static void printHunk(PrintWriter out, List<int[]> steps, List<String> a,
+                                  List<String> b) {
+        int oldCount = 0, newCount = 0;
+        for (int[] step : steps) {
+            oldCount += step[0] != '+' ? 1 : 0;
+            newCount += step[0] != '-' ? 1 : 0;
+        }
+        int oldStart = steps.get(0)[1] + (oldCount > 0 ? 1 : 0);
+        int newStart = steps.get(0)[2] + (newCount > 0 ? 1 : 0);
+        out.println("@@ -" + oldStart + "," + oldCount + " +" + newStart + "," + newCount + " @@");
+        for (int[] step : steps) {
+            String line = step[0] == '+' ? b.get(step[2]) : a.get(step[1]);
+            out.print((char) step[0]);
+            if (line.endsWith("\n")) {
+                out.print(line);
+            } else {
+                out.println(line);
+                out.println("\\ No newline at end of file");
+            }
+        }
+    }
+
+    /** Myers' O(ND) difference algorithm in linear space: each call finds a point
+     *  on an optimal path by running the forward and reverse searches until they
+     *  meet, then recurses on the two halves. */
+    private static class Myers {
+        private final int[] a, b;
+        private final boolean[] removed, added;
+
+        Myers(int[] a, int[] b, boolean[] removed, boolean[] added) {
+            this.a = a;
+            this.b = b;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        /** Mark the edits between A[aLo, aHi) and B[bLo, bHi). */
+        void compare(int aLo, int aHi, int bLo, int bHi) {
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi) {
+                for (int j = bLo; j < bHi; j++) {
+                    added[j] = true;
+                }
+                return;
+            }
+            if (bLo == bHi) {
+                for (int i = aLo; i < aHi; i++) {
+                    removed[i] = true;
+                }
+                return;
+            }
+            int[] split = bisect(aLo, aHi, bLo, bHi);
+            if (split == null) { // cannot happen, but a full replacement is still correct
+                for (int i = aLo; i < aHi; i++) {
+                    removed[i] = true;
+                }
+                for (int j = bLo; j < bHi; j++) {
+                    added[j] = true;
+                }
+                return;
+            }
+            compare(aLo, split[0], bLo, split[1]);
+            compare(split[0], aHi, split[1], bHi);
+        }
+
+        /** A point (x, y) on an optimal path through A[aLo, aHi) and B[bLo, bHi). */
+        private int[] bisect(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo, m = bHi - bLo;
+            int maxD = (n + m + 1) / 2;
+            int offset = maxD;
+            int length = 2 * maxD + 2;
+            int[] forward = new int[length];
+            int[] reverse = new int[length];
+            Arrays.fill(forward, -1);
+            Arrays.fill(reverse, -1);
+            forward[offset + 1] = 0;
+            reverse[offset + 1] = 0;
+            int delta = n - m;
+            boolean front = (delta & 1) != 0; // which search detects the overlap
+            int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+            for (int d = 0; d < maxD; d++) {
+                for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                    int i1 = offset + k1;
+                    int x1 = k1 == -d || (k1 != d && forward[i1 - 1] < forward[i1 + 1])
+                        ? forward[i1 + 1] : forward[i1 - 1] + 1;
+                    int y1 = x1 - k1;
+                    while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                        x1 += 1;
+                        y1 += 1;
+                    }
+                    forward[i1] = x1;
+                    if (x1 > n) {
+                        k1end += 2;
+                    } else if (y1 > m) {
+                        k1start += 2;
+                    } else if (front) {
+                        int i2 = offset + delta - k1;
+                        if (i2 >= 0 && i2 < length && reverse[i2] != -1 && x1 >= n - reverse[i2]) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+                for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                    int i2 = offset + k2;
+                    int x2 = k2 == -d || (k2 != d && reverse[i2 - 1] < reverse[i2 + 1])
+                        ? reverse[i2 + 1] : reverse[i2 - 1] + 1;
+                    int y2 = x2 - k2;
+                    while (x2 < n && y2 < m && a[aHi - 1 - x2] == b[bHi - 1 - y2]) {
+                        x2 += 1;
+                        y2 += 1;
+                    }
+                    reverse[i2] = x2;
+                    if (x2 > n) {
+                        k2end += 2;
+                    } else if (y2 > m) {
+                        k2start += 2;
+                    } else if (!front) {
+                        int i1 = offset + delta - k2;
+                        if (i1 >= 0 && i1 < length && forward[i1] != -1) {
+                            int x1 = forward[i1];
+                            int y1 = offset + x1 - i1;
+                            if (x1 >= n - x2) {
+                                return new int[] {aLo + x1, bLo + y1};
+                            }
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
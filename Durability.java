@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/** How hard Gitlet works to keep objects and refs on disk across a power loss,
+ *  chosen with "config durability <mode>":
+ *      none    leave writes to the operating system (the default)
+ *      batch   remember each object written, and sync them all, then their
+ *              directories once each, just before the next ref update
+ *      strict  sync every object and its directory as soon as it is written
+ *  Refs are always replaced through a temporary file and a rename, and under
+ *  batch and strict that file is synced first, so a ref on disk never names an
+ *  object that could still be lost.
+ *  @author Yang Lyu
+ */
+class Durability {
+
+    /** The modes, weakest first. */
+    static final String NONE = "none", BATCH = "batch", STRICT = "strict";
+
+    /** Objects written under batch that have not been synced yet, in write order. */
+    private static final LinkedHashSet<File> PENDING = new LinkedHashSet<>();
+
+    /** Is MODE one of the durability modes? */
+    static boolean valid(String mode) {
+        return NONE.equals(mode) || BATCH.equals(mode) || STRICT.equals(mode);
+    }
+
+    /** The mode of this repository. */
+    static String mode() {
+        String mode = Config.get("durability", NONE);
+        return valid(mode) ? mode : NONE;
+    }
+
+    /** Note that the object FILE has just been written. */
+    static synchronized void wrote(File file) {
+        String mode = mode();
+        if (mode.equals(STRICT)) {
+            sync(file);
+            sync(file.getParentFile());
+        } else if (mode.equals(BATCH)) {
+            PENDING.add(file);
+        }
+    }
+
+    /** Sync every object written since the last ref update, in parallel, and then
+     *  each directory holding one of them. */
+    static synchronized void flush() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        List<File> files = new ArrayList<>(PENDING);
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (File file : files) {
+            dirs.add(file.getParentFile());
+        }
+        PENDING.clear();
+        ForkJoinPool pool = new ForkJoinPool(CommitScanner.defaultParallelism());
+        try {
+            pool.submit(() -> files.parallelStream().forEach(Durability::sync)).join();
+        } finally {
+            pool.shutdown();
+        }
+        for (File dir : dirs) {
+            sync(dir);
+        }
+    }
+
+    /** Replace the ref file FILE with OBJ. Objects written before are made durable
+     *  first, and the new contents are renamed into place so a crash leaves either
+     *  the old ref or the new one. */
+    static void writeRef(File file, Serializable obj) {
+        flush();
+        boolean syncing = !mode().equals(NONE);
+        File partial = new File(file.getPath() + ".partial");
+        Utils.writeObject(partial, obj);
+        if (syncing) {
+            sync(partial);
+        }
+        try {
+            Files.move(partial.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (syncing) {
+            sync(file.getParentFile());
+        }
+    }
+
+    /** Force FILE, a file or a directory, to the disk. Platforms that cannot open
+     *  a directory for syncing skip it. */
+    private static void sync(File file) {
+        long start = Trace.start();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Trace.end("fsync", start, 0);
+    }
+}
@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** A background process that watches CWD and logs the names of changed files.
+ *  fsmonitor start launches it; it registers a WatchService on CWD and appends
+ *  one line per created, modified or deleted file to .gitlet/fsmonitor/log
+ *  ("*" after an overflow, when events were lost). A token names a daemon run
+ *  and a position in its log, so the files changed since a token are the log
+ *  lines after that position.
+ *  Before answering, a client drops a cookie file into a watched directory and
+ *  waits for the daemon to delete it; events are delivered in order, so every
+ *  change made before the query has been logged by then. Whenever that
+ *  handshake fails, the daemon is gone, or the log reports an overflow, the
+ *  answer is null and callers fall back to a full scan.
+ *  @author Yang Lyu
+ */
+class FsMonitor {
+
+    /** Daemon state directory. */
+    static final File MONITOR_DIR = Utils.join(Repository.GITLET_DIR, "fsmonitor");
+    /** "<run id> <pid>" of the running daemon; deleting it stops the daemon. */
+    private static final File DAEMON_FILE = Utils.join(MONITOR_DIR, "daemon");
+    /** Changed file names, one per line. */
+    private static final File LOG_FILE = Utils.join(MONITOR_DIR, "log");
+    /** Cookies created by clients and deleted by the daemon. */
+    private static final File COOKIE_DIR = Utils.join(MONITOR_DIR, "cookies");
+    /** Longest a client waits for its cookie to be seen. */
+    private static final long COOKIE_TIMEOUT_MILLIS = 1000;
+
+    /** fsmonitor start: launch the daemon unless one is running. */
+    static void start() {
+        if (running() != null) {
+            System.out.println("The file system monitor is already running.");
+            return;
+        }
+        String java = Utils.join(new File(System.getProperty("java.home")), "bin", "java").getPath();
+        try {
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    "gitlet.Main", "fsmonitor", "run")
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        } catch (IOException excp) {
+            System.out.println("Could not start the file system monitor.");
+        }
+    }
+
+    /** fsmonitor stop: ask the daemon to exit. */
+    static void stop() {
+        DAEMON_FILE.delete();
+    }
+
+    /** fsmonitor status: say whether the daemon is running. */
+    static void status() {
+        String[] daemon = running();
+        System.out.println(daemon == null ? "The file system monitor is not running."
+                : "The file system monitor is running (pid " + daemon[1] + ").");
+    }
+
+    /** The body of the daemon process. */
+    static void run() {
+        try {
+            watch();
+        } catch (IOException | InterruptedException excp) {
+            DAEMON_FILE.delete(); // clients fall back to full scans
+        }
+        System.exit(0);
+    }
+
+    /** Log changes in CWD until the daemon file is removed or replaced. */
+    private static void watch() throws IOException, InterruptedException {
+        MONITOR_DIR.mkdir();
+        COOKIE_DIR.mkdir();
+        String id = UUID.randomUUID().toString();
+        Utils.writeContents(LOG_FILE, "");
+        File partial = new File(DAEMON_FILE.getPath() + ".partial"); // never read torn
+        Utils.writeContents(partial, id + " " + ProcessHandle.current().pid());
+        Files.move(partial.toPath(), DAEMON_FILE.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        WatchKey cwdKey = Repository.CWD.toPath().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        COOKIE_DIR.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+        try (FileOutputStream log = new FileOutputStream(LOG_FILE, true)) {
+            while (id.equals(runId())) {
+                WatchKey key = watcher.poll(1, TimeUnit.SECONDS);
+                if (key == null) {
+                    continue;
+                }
+                if (key == cwdKey) {
+                    log.write(describe(key).getBytes(StandardCharsets.UTF_8));
+                    log.flush();
+                } else {
+                    // log whatever CWD events arrived before the cookies, then answer them
+                    log.write(describe(cwdKey).getBytes(StandardCharsets.UTF_8));
+                    log.flush();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() != null) {
+                            Utils.join(COOKIE_DIR, event.context().toString()).delete();
+                        }
+                    }
+                }
+                key.reset();
+            }
+        }
+    }
+
+    /** Log lines for the pending events of KEY, a key on CWD. */
+    private static String describe(WatchKey key) {
+        StringBuilder lines = new StringBuilder();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                lines.append("*\n");
+            } else {
+                lines.append(event.context()).append('\n');
+            }
+        }
+        return lines.toString();
+    }
+
+    /** A token for the present moment, or null if the daemon is not running or does
+     *  not answer. Take it before looking at the files it will cover. */
+    static String token() {
+        String[] daemon = running();
+        if (daemon == null || !sync()) {
+            return null;
+        }
+        return daemon[0] + " " + LOG_FILE.length();
+    }
+
+    /** Names of the files changed since TOKEN, or null if that cannot be known. */
+    static Set<String> changedSince(String token) {
+        String[] daemon = running();
+        if (token == null || daemon == null || !token.startsWith(daemon[0] + " ") || !sync()) {
+            return null;
+        }
+        long from = Long.parseLong(token.substring(daemon[0].length() + 1));
+        Set<String> changed = new HashSet<>();
+        try (RandomAccessFile log = new RandomAccessFile(LOG_FILE, "r")) {
+            if (log.length() < from) {
+                return null;
+            }
+            byte[] tail = new byte[(int) (log.length() - from)];
+            log.seek(from);
+            log.readFully(tail);
+            for (String name : new String(tail, StandardCharsets.UTF_8).split("\n")) {
+                if (name.equals("*")) {
+                    return null;
+                }
+                if (!name.isEmpty()) {
+                    changed.add(name);
+                }
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return changed;
+    }
+
+    /** Wait until the daemon has logged every change made so far; false on timeout. */
+    private static boolean sync() {
+        File cookie = Utils.join(COOKIE_DIR, UUID.randomUUID().toString());
+        try {
+            if (!cookie.createNewFile()) {
+                return false;
+            }
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT_MILLIS;
+            while (cookie.exists()) {
+                if (System.currentTimeMillis() > deadline) {
+                    cookie.delete();
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+            return true;
+        } catch (IOException | InterruptedException excp) {
+            cookie.delete();
+            return false;
+        }
+    }
+
+    /** {run id, pid} of the running daemon, or null if none is alive. */
+    private static String[] running() {
+        if (!DAEMON_FILE.isFile()) {
+            return null;
+        }
+        String[] daemon = Utils.readContentsAsString(DAEMON_FILE).trim().split(" ");
+        if (daemon.length != 2) {
+            return null;
+        }
+        boolean alive = ProcessHandle.of(Long.parseLong(daemon[1]))
+            .map(ProcessHandle::isAlive).orElse(false);
+        return alive ? daemon : null;
+    }
+
+    /** Run id in the daemon file, or null if it has been removed. */
+    private static String runId() {
+        if (!DAEMON_FILE.isFile()) {
+            return null;
+        }
+        return Utils.readContentsAsString(DAEMON_FILE).trim().split(" ")[0];
+    }
+}
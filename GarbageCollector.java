@@ -0,0 +1,226 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Garbage collection of unreachable commits and blobs.
+ *  Objects are numbered by their position in the sorted listings of COMMIT_DIR
+ *  and BLOB_DIR, and reachability is recorded in one bitmap per kind. The mark
+ *  phase is a level-by-level walk from the refs: each level's commits are read
+ *  in parallel by CommitScanner, which marks their blobs and returns their
+ *  parents, and the unmarked parents form the next level. The sweep then deletes
+ *  every unmarked object older than the grace period, so objects written by a
+ *  command still in progress are never removed. File tables are marked by their
+ *  commits, chunked blobs by their manifests, and a chunk goes once no
+ *  remaining manifest lists it. Older merges name their second parent only by
+ *  its branch; if that branch is gone the parent cannot be found, and the
+ *  sweep must not run, since it could delete that parent's history.
+ *  @author Yang Lyu
+ */
+class GarbageCollector {
+
+    /** Sorted names of every commit, file table, blob and chunked-blob manifest. */
+    private final List<String> commits, trees, blobs, manifests;
+    /** Reachability marks, indexed like COMMITS, TREES, BLOBS and MANIFESTS. */
+    private final Bitmap commitMarks, treeMarks, blobMarks, manifestMarks;
+
+    /** Objects and bytes removed, and unreachable objects kept for being too new. */
+    int commitsRemoved, treesRemoved, blobsRemoved, chunksRemoved, keptInGrace;
+    /** Marked older merge commits with a parent that could not be resolved. */
+    final Set<String> unresolved = ConcurrentHashMap.newKeySet();
+    long bytesRemoved;
+
+    GarbageCollector() {
+        commits = listing(Repository.COMMIT_DIR);
+        trees = listing(Repository.TREE_DIR);
+        blobs = listing(Repository.BLOB_DIR);
+        manifests = listing(ChunkStore.MANIFEST_DIR);
+        commitMarks = new Bitmap(commits.size());
+        treeMarks = new Bitmap(trees.size());
+        blobMarks = new Bitmap(blobs.size());
+        manifestMarks = new Bitmap(manifests.size());
+    }
+
+    /** Sorted names of the files in DIR; empty if DIR does not exist. */
+    private static List<String> listing(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    /** Mark everything reachable from the commits ROOTS. */
+    void mark(List<String> roots) {
+        List<String> frontier = new ArrayList<>();
+        for (String root : roots) {
+            if (root != null && markCommit(root)) {
+                frontier.add(root);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            List<List<String>> parents = CommitScanner.scan(Storage.objects(), frontier,
+                (id, commit) -> {
+                    if (commit.getTreeId() != null) {
+                        int tree = Collections.binarySearch(trees, commit.getTreeId());
+                        if (tree >= 0) {
+                            treeMarks.mark(tree);
+                        }
+                    }
+                    for (String hash : commit.getTrackedFiles().values()) {
+                        int index = Collections.binarySearch(blobs, hash);
+                        if (index >= 0) {
+                            blobMarks.mark(index);
+                        }
+                        index = Collections.binarySearch(manifests, hash);
+                        if (index >= 0) {
+                            manifestMarks.mark(index);
+                        }
+                    }
+                    return parentsOf(id, commit);
+                });
+            List<String> next = new ArrayList<>();
+            for (List<String> someParents : parents) {
+                for (String parent : someParents) {
+                    if (markCommit(parent)) {
+                        next.add(parent);
+                    }
+                }
+            }
+            frontier = next;
+        }
+    }
+
+    /** Delete every unmarked object last modified more than GRACEMILLIS ago. */
+    void sweep(long graceMillis) {
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        for (int i = 0; i < commits.size(); i++) {
+            if (!commitMarks.get(i) && remove(Utils.join(Repository.COMMIT_DIR, commits.get(i)),
+                                              cutoff)) {
+                commitsRemoved += 1;
+            }
+        }
+        for (int i = 0; i < trees.size(); i++) {
+            if (!treeMarks.get(i) && remove(Utils.join(Repository.TREE_DIR, trees.get(i)),
+                                            cutoff)) {
+                treesRemoved += 1;
+            }
+        }
+        for (int i = 0; i < blobs.size(); i++) {
+            if (!blobMarks.get(i) && remove(Utils.join(Repository.BLOB_DIR, blobs.get(i)),
+                                            cutoff)) {
+                blobsRemoved += 1;
+            }
+        }
+        for (int i = 0; i < manifests.size(); i++) {
+            if (!manifestMarks.get(i) && remove(Utils.join(ChunkStore.MANIFEST_DIR,
+                                                           manifests.get(i)), cutoff)) {
+                blobsRemoved += 1;
+            }
+        }
+        sweepChunks(cutoff);
+        List<String> partials = Utils.plainFilenamesIn(Utils.join(Repository.GITLET_DIR, "tmp"));
+        if (partials != null) { // left behind by interrupted writes
+            for (String partial : partials) {
+                File file = Utils.join(Repository.GITLET_DIR, "tmp", partial);
+                if (file.lastModified() < cutoff) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /** Delete every chunk listed by no remaining manifest and last modified before
+     *  CUTOFF. */
+    private void sweepChunks(long cutoff) {
+        List<String> chunks = Utils.plainFilenamesIn(ChunkStore.CHUNK_DIR);
+        if (chunks == null) {
+            return;
+        }
+        HashSet<String> used = new HashSet<>();
+        for (String manifest : manifests) {
+            if (Utils.join(ChunkStore.MANIFEST_DIR, manifest).exists()) {
+                used.addAll(Arrays.asList(ChunkStore.read(manifest).chunks));
+            }
+        }
+        for (String chunk : chunks) {
+            if (!used.contains(chunk) && remove(Utils.join(ChunkStore.CHUNK_DIR, chunk), cutoff)) {
+                chunksRemoved += 1;
+            }
+        }
+    }
+
+    /** Delete FILE if it was last modified before CUTOFF. */
+    private boolean remove(File file, long cutoff) {
+        if (file.lastModified() >= cutoff) {
+            keptInGrace += 1;
+            return false;
+        }
+        long length = file.length();
+        if (file.delete()) {
+            bytesRemoved += length;
+            return true;
+        }
+        return false;
+    }
+
+    /** Mark commit ID; returns true if it exists locally and was not marked before. */
+    private boolean markCommit(String id) {
+        int index = Collections.binarySearch(commits, id);
+        return index >= 0 && commitMarks.mark(index);
+    }
+
+    /** Parents of COMMIT, whose id is ID, found as Repository finds them. An older
+     *  merge naming a branch that no longer exists is added to UNRESOLVED. */
+    private List<String> parentsOf(String id, Commit commit) {
+        List<String> result = new ArrayList<>(2);
+        if (commit.getParent() != null) {
+            result.add(commit.getParent());
+        }
+        if (commit.getMergeParent() != null) {
+            result.add(commit.getMergeParent());
+        } else if (Repository.hasTwoParents(commit)) {
+            // both branches the message names, since either may be the merged one
+            for (String parent : Repository.getBothParents(commit)) {
+                if (parent == null) {
+                    unresolved.add(id);
+                } else {
+                    result.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A fixed-size bitmap that many threads may mark at once. */
+    private static class Bitmap {
+        private final AtomicLongArray words;
+
+        Bitmap(int size) {
+            words = new AtomicLongArray((size + 63) / 64);
+        }
+
+        /** Set bit I; returns true if it was clear. */
+        boolean mark(int i) {
+            long bit = 1L << (i & 63);
+            while (true) {
+                long old = words.get(i >> 6);
+                if ((old & bit) != 0) {
+                    return false;
+                }
+                if (words.compareAndSet(i >> 6, old, old | bit)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Is bit I set? */
+        boolean get(int i) {
+            return (words.get(i >> 6) & (1L << (i & 63))) != 0;
+        }
+    }
+}
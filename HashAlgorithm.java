@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The object hash functions a repository can be created with.
+ *  Each repository picks one at init (init --object-format=sha1|sha256) and
+ *  records it in .gitlet/config as objectformat; every blob and commit name
+ *  in that repository is a hex digest of this algorithm.
+ *  MessageDigest instances are expensive to look up and not thread-safe, so
+ *  each thread keeps one per algorithm and resets it between uses.
+ *  @author Yang Lyu
+ */
+enum HashAlgorithm {
+    SHA1("sha1", "SHA-1", 20),
+    SHA256("sha256", "SHA-256", 32);
+
+    /** Name used in .gitlet/config and on the command line. */
+    private final String formatName;
+    /** Number of bytes in a raw digest. */
+    private final int length;
+    /** One reusable digest per thread. */
+    private final ThreadLocal<MessageDigest> digests;
+    /** One reusable read buffer per thread, for hashing files. */
+    private static final ThreadLocal<byte[]> BUFFERS =
+        ThreadLocal.withInitial(() -> new byte[1 << 16]);
+    /** The algorithm of the repository in CWD; null until first use. */
+    private static HashAlgorithm current;
+
+    HashAlgorithm(String formatName, String jcaName, int length) {
+        this.formatName = formatName;
+        this.length = length;
+        this.digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(jcaName);
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support " + jcaName);
+            }
+        });
+    }
+
+    /** The algorithm named NAME (as in .gitlet/config), or null if there is none. */
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.formatName.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /** The algorithm of the repository in CWD. Repositories created before the
+     *  setting existed use SHA-1. */
+    static synchronized HashAlgorithm current() {
+        if (current == null) {
+            current = forName(Config.get("objectformat", SHA1.formatName));
+        }
+        return current;
+    }
+
+    /** Name used in .gitlet/config. */
+    String formatName() {
+        return formatName;
+    }
+
+    /** Length of a hex digest. */
+    int hexLength() {
+        return 2 * length;
+    }
+
+    /** Raw digest of the concatenation of VALS, which may be any mixture of
+     *  byte arrays and Strings. */
+    byte[] digest(Object... vals) {
+        long start = Trace.start();
+        long bytes = 0;
+        MessageDigest md = digests.get();
+        md.reset();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                bytes += ((byte[]) val).length;
+            } else if (val instanceof String) {
+                byte[] encoded = ((String) val).getBytes(StandardCharsets.UTF_8);
+                md.update(encoded);
+                bytes += encoded.length;
+            } else {
+                throw new IllegalArgumentException("improper type to " + formatName);
+            }
+        }
+        byte[] result = md.digest();
+        Trace.end(formatName, start, bytes);
+        return result;
+    }
+
+    /** Hex digest of the concatenation of VALS. */
+    String hash(Object... vals) {
+        return Utils.toHex(digest(vals));
+    }
+
+    /** Hex digest of the remaining bytes of BUFFER, which may be memory-mapped. */
+    String hash(ByteBuffer buffer) {
+        long start = Trace.start();
+        long bytes = buffer.remaining();
+        MessageDigest md = digests.get();
+        md.reset();
+        md.update(buffer);
+        String result = Utils.toHex(md.digest());
+        Trace.end(formatName + "-buffer", start, bytes);
+        return result;
+    }
+
+    /** Hex digest of the contents of FILE, streamed rather than read whole. */
+    String hashFile(File file) {
+        long start = Trace.start();
+        long bytes = 0;
+        MessageDigest md = digests.get();
+        md.reset();
+        byte[] buffer = BUFFERS.get();
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+                bytes += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String result = Utils.toHex(md.digest());
+        Trace.end(formatName + "-file", start, bytes);
+        return result;
+    }
+}
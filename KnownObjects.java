@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/** A Bloom filter over the names of the blobs in the object store.
+ *  The blob write path asks it first: a "no" means the blob is certainly new
+ *  and is written without looking for it, and only a "maybe" costs a lookup on
+ *  disk before the write is skipped. The filter is saved in
+ *  .gitlet/index/known-blobs; blobs written since then are appended to
+ *  known-blobs.log and replayed on load, and the log is folded into the
+ *  filter once it grows long. Every blob name is a digest, so its first two
+ *  words serve directly as the two hashes for double hashing. gc rebuilds the
+ *  filter, and a filter that has outgrown its capacity is rebuilt larger.
+ *  @author Yang Lyu
+ */
+class KnownObjects implements Serializable {
+
+    /** Filter bits per blob, and number of probes. */
+    private static final int BITS_PER_OBJECT = 10, HASHES = 7;
+    /** Fewest blobs a filter is sized for. */
+    private static final int MIN_CAPACITY = 1024;
+    /** Log entries replayed before the log is folded into the filter. */
+    private static final int FOLD_AT = 4096;
+
+    /** The filter of the current repository, once loaded. */
+    private static KnownObjects current;
+
+    /** The filter bits. */
+    private final long[] bits;
+    /** Blobs the filter is sized for. */
+    private final int capacity;
+    /** Blobs added so far. */
+    private int count;
+
+    private KnownObjects(int capacity) {
+        this.capacity = capacity;
+        this.bits = new long[(int) (((long) capacity * BITS_PER_OBJECT + 63) / 64)];
+    }
+
+    /** Might the current repository already hold the blob HASH? */
+    static synchronized boolean mightHave(String hash) {
+        return load().contains(ObjectId.fromHex(hash));
+    }
+
+    /** Record that the current repository now holds the blob HASH. */
+    static synchronized void add(String hash) {
+        KnownObjects filter = load();
+        filter.insert(ObjectId.fromHex(hash));
+        append(Repository.GITLET_DIR, Collections.singletonList(hash));
+    }
+
+    /** Record that the repository whose .gitlet directory is GITLETDIR now holds
+     *  the blobs HASHES, if it keeps a filter. */
+    static void recordAll(File gitletDir, Collection<String> hashes) {
+        if (snapshotFile(gitletDir).isFile() && !hashes.isEmpty()) {
+            append(gitletDir, hashes);
+        }
+    }
+
+    /** Rebuild the current repository's filter from the blobs on disk. */
+    static synchronized void rebuild() {
+        current = build();
+    }
+
+    /** The current repository's filter, loading or building it on first use. */
+    private static KnownObjects load() {
+        if (current != null) {
+            return current;
+        }
+        File snapshot = snapshotFile(Repository.GITLET_DIR);
+        if (!snapshot.isFile()) {
+            current = build();
+            return current;
+        }
+        current = Utils.readObject(snapshot, KnownObjects.class);
+        File log = logFile(Repository.GITLET_DIR);
+        if (log.isFile()) {
+            String[] logged = Utils.readContentsAsString(log).split("\n");
+            for (String hash : logged) {
+                if (!hash.isEmpty()) {
+                    current.insert(ObjectId.fromHex(hash));
+                }
+            }
+            if (current.count > current.capacity) {
+                current = build();
+            } else if (logged.length > FOLD_AT) {
+                current.save();
+            }
+        }
+        return current;
+    }
+
+    /** A filter over every blob and chunked-blob manifest now on disk, saved. */
+    private static KnownObjects build() {
+        List<String> blobs = Utils.plainFilenamesIn(Repository.BLOB_DIR);
+        List<String> manifests = Utils.plainFilenamesIn(ChunkStore.MANIFEST_DIR);
+        int total = (blobs == null ? 0 : blobs.size()) + (manifests == null ? 0 : manifests.size());
+        KnownObjects filter = new KnownObjects(Math.max(MIN_CAPACITY, 2 * total));
+        for (List<String> names : Arrays.asList(blobs, manifests)) {
+            if (names != null) {
+                for (String hash : names) {
+                    filter.insert(ObjectId.fromHex(hash));
+                }
+            }
+        }
+        filter.save();
+        return filter;
+    }
+
+    /** Write this filter as the current repository's, emptying the log. */
+    private void save() {
+        File snapshot = snapshotFile(Repository.GITLET_DIR);
+        snapshot.getParentFile().mkdirs();
+        Utils.writeObject(snapshot, this);
+        logFile(Repository.GITLET_DIR).delete();
+    }
+
+    /** Add ID to the filter. */
+    private void insert(ObjectId id) {
+        for (int i = 0; i < HASHES; i++) {
+            int bit = probe(id, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        count += 1;
+    }
+
+    /** Might ID have been added? */
+    private boolean contains(ObjectId id) {
+        for (int i = 0; i < HASHES; i++) {
+            int bit = probe(id, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Bit for probe I of ID. */
+    private int probe(ObjectId id, int i) {
+        return (int) Math.floorMod(id.w0 + i * (id.w1 | 1), (long) bits.length * 64);
+    }
+
+    /** Append HASHES to the log of the repository in GITLETDIR. */
+    private static void append(File gitletDir, Collection<String> hashes) {
+        StringBuilder lines = new StringBuilder();
+        for (String hash : hashes) {
+            lines.append(hash).append('\n');
+        }
+        File log = logFile(gitletDir);
+        log.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The saved filter of the repository in GITLETDIR. */
+    private static File snapshotFile(File gitletDir) {
+        return Utils.join(gitletDir, "index", "known-blobs");
+    }
+
+    /** The log of blobs added since the filter of GITLETDIR was saved. */
+    private static File logFile(File gitletDir) {
+        return Utils.join(gitletDir, "index", "known-blobs.log");
+    }
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/** Options accepted by log and global-log:
+ *      -n <count>            stop after COUNT commits
+ *      --since=<yyyy-MM-dd>  only show commits made on or after that day
+ *      --format=<name>       "medium" (default) or "oneline"
+ *      -- <path>             only show commits that changed PATH (log only)
+ *  @author Yang Lyu
+ */
+class LogOptions {
+
+    /** Maximum number of commits to print; negative means no limit. */
+    int limit = -1;
+    /** Earliest timestamp to print; null means no lower bound. */
+    Date since = null;
+    /** Output format, either "medium" or "oneline". */
+    String format = "medium";
+    /** Only show commits changing this file; null shows every commit. */
+    String path = null;
+
+    /** Parse ARGS starting at index START. Returns null if any option is malformed. */
+    static LogOptions parse(String[] args, int start) {
+        LogOptions opts = new LogOptions();
+        for (int i = start; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (arg.equals("-n") && i + 1 < args.length) {
+                    opts.limit = Integer.parseInt(args[++i]);
+                    if (opts.limit < 0) {
+                        return null;
+                    }
+                } else if (arg.equals("--") && i + 2 == args.length) {
+                    opts.path = args[++i];
+                } else if (arg.startsWith("--since=")) {
+                    LocalDate day = LocalDate.parse(arg.substring("--since=".length()));
+                    opts.since = Date.from(day.atStartOfDay(ZoneId.of("America/Los_Angeles"))
+                            .toInstant());
+                } else if (arg.startsWith("--format=")) {
+                    opts.format = arg.substring("--format=".length());
+                    if (!opts.format.equals("medium") && !opts.format.equals("oneline")) {
+                        return null;
+                    }
+                } else {
+                    return null;
+                }
+            } catch (NumberFormatException | DateTimeParseException e) {
+                return null;
+            }
+        }
+        return opts;
+    }
+
+    /** Has the limit been reached after printing COUNT commits? */
+    boolean done(int count) {
+        return limit >= 0 && count >= limit;
+    }
+
+    /** Is a commit made at TIME old enough to be filtered out? */
+    boolean tooOld(Date time) {
+        return since != null && time.before(since);
+    }
+}
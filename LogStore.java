@@ -0,0 +1,298 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Objects and refs kept in one append-only log, .gitlet/store/objects.log,
+ *  with a hash index from each name to where its latest record starts.
+ *  Every record is
+ *      tag (1 byte) | name length (2) | name | payload length (4) | CRC-32 (4) | payload
+ *  where the tag is 'c', 't' or 'b' for a commit, tree or blob, 'r' for a ref
+ *  update and 'd' for a ref deletion. Nothing is ever rewritten, so a crash can
+ *  only leave a torn record at the end, which is cut off on the next open.
+ *  The index is saved to .gitlet/store/objects.idx, together with the log
+ *  length it covers, once SAVE_AFTER bytes have been appended since it was
+ *  last saved; the records after that are replayed into it when the store is
+ *  opened, so a commit costs an append rather than a rewrite of the index.
+ *  @author Yang Lyu
+ */
+class LogStore implements ObjectStore, RefStore {
+
+    /** Bytes before a record's name, and between its name and its payload. */
+    private static final int PREFIX = 3, INFIX = 8;
+    /** Bytes appended past the saved index before it is saved again, which bounds
+     *  what an open has to replay. */
+    private static final long SAVE_AFTER = 4 << 20;
+
+    /** The log and its saved index. */
+    private final File logFile, indexFile;
+    /** The log, open for positional reads and appends. */
+    private final FileChannel log;
+    /** Where every live object and ref is. */
+    private Index index;
+    /** Length of the log covered by the saved index. */
+    private long savedEnd;
+
+    /** The in-memory index, also saved as a snapshot. */
+    private static class Index implements Serializable {
+        /** length of the log covered by this index */
+        long end = 0;
+        /** object tag -> name -> {payload offset, payload length} */
+        HashMap<Character, HashMap<String, long[]>> objects = new HashMap<>();
+        /** ref name -> value */
+        HashMap<String, String> refs = new HashMap<>();
+
+        Index() {
+            for (char tag : new char[] {'c', 't', 'b'}) {
+                objects.put(tag, new HashMap<>());
+            }
+        }
+    }
+
+    /** Open, or create, the store in the directory DIR. */
+    LogStore(File dir) {
+        dir.mkdirs();
+        logFile = Utils.join(dir, "objects.log");
+        indexFile = Utils.join(dir, "objects.idx");
+        try {
+            log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            index = loadIndex();
+            savedEnd = index.end;
+            if (index.end != log.size()) {
+                replay();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public boolean has(String kind, String id) {
+        return objects(tagOf(kind)).containsKey(id);
+    }
+
+    @Override
+    public byte[] read(String kind, String id) {
+        long[] where = objects(tagOf(kind)).get(id);
+        if (where == null) {
+            throw new IllegalArgumentException("no such object: " + kind + "/" + id);
+        }
+        long start = Trace.start();
+        ByteBuffer contents = ByteBuffer.allocate((int) where[1]);
+        readFully(contents, where[0]);
+        Trace.end("logRead", start, where[1]);
+        return contents.array();
+    }
+
+    @Override
+    public synchronized void write(String kind, String id, byte[] contents) {
+        char tag = tagOf(kind);
+        if (objects(tag).containsKey(id)) {
+            return;
+        }
+        append(tag, id, contents);
+        if (Durability.mode().equals(Durability.STRICT)) {
+            force();
+        }
+    }
+
+    @Override
+    public List<String> list(String kind) {
+        List<String> names = new ArrayList<>(objects(tagOf(kind)).keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public synchronized String get(String name) {
+        return index.refs.get(name);
+    }
+
+    @Override
+    public synchronized HashMap<String, String> all() {
+        return new HashMap<>(index.refs);
+    }
+
+    @Override
+    public synchronized void set(String name, String value) {
+        updateRef('r', name, value);
+    }
+
+    @Override
+    public synchronized void remove(String name) {
+        if (index.refs.containsKey(name)) {
+            updateRef('d', name, "");
+        }
+    }
+
+    /** Append a ref record with TAG for NAME and VALUE, ordered after every object
+     *  already in the log, and save the index. */
+    private void updateRef(char tag, String name, String value) {
+        boolean syncing = !Durability.mode().equals(Durability.NONE);
+        if (syncing) {
+            force();
+        }
+        append(tag, name, value.getBytes(StandardCharsets.UTF_8));
+        if (syncing) {
+            force();
+        }
+        if (index.end - savedEnd >= SAVE_AFTER) {
+            saveIndex();
+        }
+    }
+
+    /** Save the index through a temporary file and a rename. */
+    private void saveIndex() {
+        Durability.writeRef(indexFile, index);
+        savedEnd = index.end;
+    }
+
+    /** Append the record TAG NAME PAYLOAD to the log and index it. */
+    private void append(char tag, String name, byte[] payload) {
+        long start = Trace.start();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(PREFIX + nameBytes.length + INFIX
+                + payload.length);
+        record.put((byte) tag).putShort((short) nameBytes.length).put(nameBytes);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+        long position = index.end;
+        try {
+            while (record.hasRemaining()) {
+                position += log.write(record, position);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        apply(tag, name, index.end + PREFIX + nameBytes.length + INFIX, payload);
+        index.end = position;
+        Trace.end("logAppend", start, record.limit());
+    }
+
+    /** Record in the index that the record TAG NAME has its PAYLOAD at OFFSET. */
+    private void apply(char tag, String name, long offset, byte[] payload) {
+        if (tag == 'r') {
+            index.refs.put(name, new String(payload, StandardCharsets.UTF_8));
+        } else if (tag == 'd') {
+            index.refs.remove(name);
+        } else {
+            objects(tag).put(name, new long[] {offset, payload.length});
+        }
+    }
+
+    /** Index the records after the end of the saved index, cutting off a torn
+     *  record at the end of the log, and save the index if it was unusable or
+     *  the replay was long. */
+    private void replay() throws IOException {
+        long size = log.size();
+        boolean stale = index.end > size;
+        if (stale) { // the index is newer than the log: start over
+            index = new Index();
+        }
+        long position = index.end;
+        ByteBuffer prefix = ByteBuffer.allocate(PREFIX);
+        ByteBuffer infix = ByteBuffer.allocate(INFIX);
+        while (position + PREFIX + INFIX <= size) {
+            prefix.clear();
+            readFully(prefix, position);
+            char tag = (char) prefix.get(0);
+            int nameLength = prefix.getShort(1) & 0xffff;
+            if ("ctbrd".indexOf(tag) < 0 || position + PREFIX + nameLength + INFIX > size) {
+                break;
+            }
+            ByteBuffer nameBytes = ByteBuffer.allocate(nameLength);
+            readFully(nameBytes, position + PREFIX);
+            infix.clear();
+            readFully(infix, position + PREFIX + nameLength);
+            int length = infix.getInt(0);
+            long offset = position + PREFIX + nameLength + INFIX;
+            if (length < 0 || offset + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != infix.getInt(4)) {
+                break;
+            }
+            apply(tag, new String(nameBytes.array(), StandardCharsets.UTF_8), offset,
+                    payload.array());
+            position = offset + length;
+        }
+        if (position < size) {
+            log.truncate(position);
+        }
+        index.end = position;
+        if (stale || index.end - savedEnd >= SAVE_AFTER) {
+            saveIndex();
+        }
+    }
+
+    /** The saved index, or an empty one if it is missing or unreadable. */
+    private Index loadIndex() {
+        if (indexFile.isFile()) {
+            try {
+                return Utils.readObject(indexFile, Index.class);
+            } catch (IllegalArgumentException excp) {
+                // rebuilt from the log
+            }
+        }
+        return new Index();
+    }
+
+    /** Fill BUFFER from the log starting at POSITION. */
+    private void readFully(ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                int n = log.read(buffer, position);
+                if (n < 0) {
+                    throw new IllegalArgumentException("log ends early: " + logFile);
+                }
+                position += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Force the log to the disk. */
+    private void force() {
+        long start = Trace.start();
+        try {
+            log.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("fsync", start, 0);
+    }
+
+    /** Names and locations of the objects with TAG. */
+    private HashMap<String, long[]> objects(char tag) {
+        return index.objects.get(tag);
+    }
+
+    /** The record tag of objects of KIND. */
+    private static char tagOf(String kind) {
+        if (kind.equals(COMMITS)) {
+            return 'c';
+        } else if (kind.equals(TREES)) {
+            return 't';
+        } else {
+            return 'b';
+        }
+    }
+}
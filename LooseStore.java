@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+
+/** The original storage layout: one file per object in .gitlet/commits,
+ *  .gitlet/trees and .gitlet/blobs, and every ref in the serialized pointer
+ *  map .gitlet/pointers/pointer. Only this layout supports alternates, chunked
+ *  blobs, gc and the remote commands, which work on those directories.
+ *  @author Yang Lyu
+ */
+class LooseStore implements ObjectStore, RefStore {
+
+    /** The ref file. */
+    private static final File POINTER_FILE = Utils.join(Repository.POINTER_DIR, "pointer");
+
+    /** The file of object ID of KIND, borrowed from an alternate object store if
+     *  it is not held locally. */
+    File file(String kind, String id) {
+        return Alternates.resolve(kind, id, Utils.join(Repository.GITLET_DIR, kind, id));
+    }
+
+    @Override
+    public boolean has(String kind, String id) {
+        return file(kind, id).isFile() || (kind.equals(BLOBS) && ChunkStore.has(id));
+    }
+
+    @Override
+    public byte[] read(String kind, String id) {
+        File file = file(kind, id);
+        if (kind.equals(BLOBS) && !file.exists() && ChunkStore.has(id)) {
+            return ChunkStore.readContents(id);
+        }
+        return Utils.readContents(file);
+    }
+
+    @Override
+    public void write(String kind, String id, byte[] contents) {
+        // repositories made before trees were stored lack the directory; it is made here
+        ObjectTransfer.writeAtomically(ByteBuffer.wrap(contents),
+                Utils.join(Repository.GITLET_DIR, kind, id));
+        if (kind.equals(BLOBS)) {
+            KnownObjects.add(id);
+        }
+    }
+
+    @Override
+    public List<String> list(String kind) {
+        return Utils.plainFilenamesIn(Utils.join(Repository.GITLET_DIR, kind));
+    }
+
+    @Override
+    public <T extends Serializable> T readObject(String kind, String id, Class<T> expectedClass) {
+        return MappedObjects.readObject(file(kind, id), expectedClass, true);
+    }
+
+    /** Store SOURCE as object ID of KIND, in chunks if it is a blob, chunking is on
+     *  and it is large enough. Does nothing if the object is already stored; the
+     *  known-object filter lets new blobs skip that lookup. */
+    @Override
+    public void writeFile(String kind, String id, File source) {
+        File file = Utils.join(Repository.GITLET_DIR, kind, id);
+        if (!kind.equals(BLOBS)) {
+            if (!file.exists()) {
+                copy(source, file);
+            }
+            return;
+        }
+        if (KnownObjects.mightHave(id)
+                && (file.exists() || Utils.join(ChunkStore.MANIFEST_DIR, id).exists())) {
+            Trace.hit("storeBlob");
+            return;
+        }
+        if (ChunkStore.wants(source)) {
+            ChunkStore.write(source, id);
+        } else {
+            copy(source, file);
+        }
+        KnownObjects.add(id);
+    }
+
+    /** Copy SOURCE to the object file TARGET through a temporary file, so a crash
+     *  cannot leave a torn object that later writes would take as stored. */
+    private static void copy(File source, File target) {
+        long start = Trace.start();
+        ObjectTransfer.copyAtomically(source, target);
+        Trace.end("copyPaste", start, target.length());
+    }
+
+    /** Write object ID of KIND to DESTINATION, however it is stored. */
+    @Override
+    public void readFile(String kind, String id, File destination) {
+        File file = file(kind, id);
+        if (kind.equals(BLOBS) && !file.exists() && ChunkStore.has(id)) {
+            long start = Trace.start();
+            Trace.end("copyPaste", start, ChunkStore.restore(id, destination));
+        } else {
+            Repository.copyPaste(file, destination);
+        }
+    }
+
+    @Override
+    public String get(String name) {
+        return pointers().pointers.get(name);
+    }
+
+    @Override
+    public HashMap<String, String> all() {
+        return new HashMap<>(pointers().pointers);
+    }
+
+    @Override
+    public void set(String name, String value) {
+        Repository.Pointer p = pointers();
+        p.pointers.put(name, value); // if the ref exists, overwrite
+        Durability.writeRef(POINTER_FILE, p);
+    }
+
+    @Override
+    public void remove(String name) {
+        Repository.Pointer p = pointers();
+        if (p.pointers.remove(name) != null) {
+            Durability.writeRef(POINTER_FILE, p);
+        }
+    }
+
+    /** The pointer map, or an empty one before the first ref is set. */
+    private static Repository.Pointer pointers() {
+        return POINTER_FILE.isFile()
+            ? Utils.readObject(POINTER_FILE, Repository.Pointer.class) : new Repository.Pointer();
+    }
+}
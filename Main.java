@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Yang Lyu
  */
@@ -9,22 +12,46 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        args = Trace.configure(args);
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
         }
         String firstArg = args[0];
+        if (CheckoutJournal.exists() && !(firstArg.equals("checkout") && args.length == 2
+                && (args[1].equals("--continue") || args[1].equals("--abort")))) {
+            System.out.println("A checkout was interrupted;"
+                    + " run checkout --continue or checkout --abort first.");
+            System.exit(0);
+        }
         switch (firstArg) {
             case "init":
-                if (args.length != 1) {
+                HashAlgorithm format = HashAlgorithm.SHA1;
+                String storage = Storage.LOOSE;
+                for (int i = 1; i < args.length && format != null; i++) {
+                    if (args[i].startsWith("--object-format=")) {
+                        format = HashAlgorithm.forName(
+                                args[i].substring("--object-format=".length()));
+                    } else if (args[i].startsWith("--storage=")) {
+                        storage = args[i].substring("--storage=".length());
+                    } else {
+                        format = null;
+                    }
+                }
+                // the memory backend only lives as long as one process: not for the command line
+                if (format == null || !Storage.valid(storage) || storage.equals(Storage.MEMORY)) {
                     System.out.println("Incorrect operands.");
                     System.exit(0);
                 }
-                Repository repo = new Repository();
+                Repository repo = new Repository(format, storage);
                 break;
             case "add":
                 alert(args.length, 2, "Incorrect operands.");
-                Repository.add(args[1]);
+                if (args[1].equals("-A")) {
+                    Repository.addAll();
+                } else {
+                    Repository.add(args[1]);
+                }
                 break;
             case "commit":
                 alert(args.length, 2, "Please enter a commit message.");
@@ -39,16 +66,40 @@ public class Main {
                 Repository.rm(args[1]);
                 break;
             case "log":
-                alert(args.length, 1, "Incorrect operands.");
-                Repository.log();
+                Repository.log(logOptions(args));
                 break;
             case "global-log":
-                alert(args.length, 1, "Incorrect operands.");
-                Repository.logGlobal();
+                LogOptions globalOpts = logOptions(args);
+                if (globalOpts.path != null) {
+                    System.out.println("Incorrect operands.");
+                    break;
+                }
+                Repository.logGlobal(globalOpts);
                 break;
             case "find":
+                if (args.length == 3 && args[1].equals("--grep")) {
+                    alert(args.length, 3, "Incorrect operands.");
+                    Repository.find("grep", args[2]);
+                } else if (args.length == 3 && args[1].equals("--regex")) {
+                    alert(args.length, 3, "Incorrect operands.");
+                    Repository.find("regex", args[2]);
+                } else if (args.length == 3 && args[1].equals("--word")) {
+                    alert(args.length, 3, "Incorrect operands.");
+                    Repository.find("word", args[2]);
+                } else {
+                    alert(args.length, 2, "Incorrect operands.");
+                    Repository.find(args[1]);
+                }
+                break;
+            case "index":
                 alert(args.length, 2, "Incorrect operands.");
-                Repository.find(args[1]);
+                if (args[1].equals("rebuild")) {
+                    Repository.rebuildIndex();
+                } else if (args[1].equals("check")) {
+                    Repository.checkIndex();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
                 break;
             case "status":
                 alert(args.length, 1, "Incorrect operands.");
@@ -63,6 +114,12 @@ public class Main {
                         break;
                     }
                     Repository.checkoutFromCommit(args[1], args[3]);
+                } else if (args.length == 2 && args[1].equals("--continue")) {
+                    alertInitialized();
+                    Repository.continueCheckout();
+                } else if (args.length == 2 && args[1].equals("--abort")) {
+                    alertInitialized();
+                    Repository.abortCheckout();
                 } else if (args.length == 2) {
                     Repository.checkoutBranch(args[1]);
                 }
@@ -83,6 +140,149 @@ public class Main {
                 alert(args.length, 2, "Incorrect operands.");
                 Repository.merge(args[1]);
                 break;
+            case "cherry-pick":
+                alert(args.length, 2, "Incorrect operands.");
+                Repository.cherryPick(args[1]);
+                break;
+            case "rebase":
+                alert(args.length, 2, "Incorrect operands.");
+                Repository.rebase(args[1]);
+                break;
+            case "gc":
+                alertInitialized();
+                double graceDays = 14;
+                if (args.length == 2 && args[1].equals("--prune=now")) {
+                    graceDays = 0;
+                } else if (args.length == 2 && args[1].startsWith("--prune=")) {
+                    try {
+                        graceDays = Double.parseDouble(args[1].substring("--prune=".length()));
+                    } catch (NumberFormatException e) {
+                        graceDays = -1;
+                    }
+                } else if (args.length != 1) {
+                    graceDays = -1;
+                }
+                if (graceDays < 0) {
+                    System.out.println("Incorrect operands.");
+                    break;
+                }
+                Repository.gc(graceDays);
+                break;
+            case "config":
+                alertInitialized();
+                if (args.length != 2 && args.length != 3) {
+                    System.out.println("Incorrect operands.");
+                    break;
+                }
+                Repository.config(args[1], args.length == 3 ? args[2] : null);
+                break;
+            case "diff":
+                alertInitialized();
+                if (args.length == 2 && (args[1].equals("--cached") || args[1].equals("--staged"))) {
+                    Repository.diff(true, null, null);
+                } else if (args.length <= 3) {
+                    Repository.diff(false, args.length > 1 ? args[1] : null,
+                            args.length > 2 ? args[2] : null);
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "blame":
+                alert(args.length, 2, "Incorrect operands.");
+                Repository.blame(args[1]);
+                break;
+            case "fsmonitor":
+                alertInitialized();
+                alert(args.length, 2, "Incorrect operands.");
+                if (args[1].equals("start")) {
+                    FsMonitor.start();
+                } else if (args[1].equals("stop")) {
+                    FsMonitor.stop();
+                } else if (args[1].equals("status")) {
+                    FsMonitor.status();
+                } else if (args[1].equals("run")) {
+                    FsMonitor.run();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "bisect":
+                alertInitialized();
+                if (args.length >= 2 && args[1].equals("start") && args.length <= 3) {
+                    Repository.bisectStart(args.length == 3 ? args[2] : null,
+                            Collections.emptyList());
+                } else if (args.length >= 4 && args[1].equals("start")) {
+                    Repository.bisectStart(args[2], Arrays.asList(args).subList(3, args.length));
+                } else if (args.length >= 2 && args.length <= 3 && (args[1].equals("good")
+                        || args[1].equals("bad") || args[1].equals("skip"))) {
+                    Repository.bisectMark(args[1], args.length == 3 ? args[2] : null);
+                } else if (args.length >= 3 && args[1].equals("run")) {
+                    Repository.bisectRun(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("reset")) {
+                    Repository.bisectReset();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "count-commits":
+                alertInitialized();
+                if (args.length != 2 && args.length != 3) {
+                    System.out.println("Incorrect operands.");
+                    break;
+                }
+                Repository.countCommits(args[1], args.length == 3 ? args[2] : null);
+                break;
+            case "add-remote":
+                alert(args.length, 3, "Incorrect operands.");
+                Repository.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                alert(args.length, 2, "Incorrect operands.");
+                Repository.removeRemote(args[1]);
+                break;
+            case "push":
+                alert(args.length, 3, "Incorrect operands.");
+                Repository.push(args[1], args[2]);
+                break;
+            case "fetch":
+                alert(args.length, 3, "Incorrect operands.");
+                Repository.fetch(args[1], args[2]);
+                break;
+            case "pull":
+                alert(args.length, 3, "Incorrect operands.");
+                Repository.pull(args[1], args[2]);
+                break;
+            case "clone":
+                if (args.length == 2) {
+                    Repository.cloneRepo(args[1], false);
+                } else if (args.length == 3 && args[1].equals("--shared")) {
+                    Repository.cloneRepo(args[2], true);
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "alternates":
+                alertInitialized();
+                if (args.length == 3 && args[1].equals("add")) {
+                    Repository.addAlternate(args[2]);
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    Repository.listAlternates();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "sparse-checkout":
+                alertInitialized();
+                if (args.length >= 3 && args[1].equals("set")) {
+                    Repository.sparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    Repository.sparseCheckout(null);
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    Repository.sparseList();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
             default:
                 System.out.println("No command with that name exists.");
         }
@@ -90,14 +290,30 @@ public class Main {
 
     public static void alert(int arglen, int n, String message) {
 
+        alertInitialized();
+
+        if (arglen != n) {
+            System.out.println(message);
+            System.exit(0);
+        }
+    }
+
+    /** Exit unless run inside an initialized Gitlet directory. */
+    public static void alertInitialized() {
         if (!Utils.join(Repository.CWD, ".gitlet").exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
+    }
 
-        if (arglen != n) {
-            System.out.println(message);
+    /** Parse the options following log or global-log; exit if they are malformed. */
+    private static LogOptions logOptions(String[] args) {
+        alertInitialized();
+        LogOptions opts = LogOptions.parse(args, 1);
+        if (opts == null) {
+            System.out.println("Incorrect operands.");
             System.exit(0);
         }
+        return opts;
     }
 }
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Read path for objects based on memory-mapped files.
+ *  Files of at least MAP_THRESHOLD bytes are mapped with FileChannel.map, so
+ *  hashing, comparing, deserializing and copying them works straight off the
+ *  page cache without copying the contents into the Java heap; smaller files
+ *  are cheaper to read outright. Blobs and commits never change once written,
+ *  so their mappings are kept in a bounded LRU cache; working-tree and staging
+ *  files are mapped per use.
+ *  @author Yang Lyu
+ */
+class MappedObjects {
+
+    /** Files smaller than this are read into the heap instead of mapped. */
+    static final int MAP_THRESHOLD = 64 * 1024;
+    /** Most bytes kept mapped by the cache at once. */
+    private static final long CACHE_BYTES = 256L << 20;
+    /** Most mappings kept by the cache at once. */
+    private static final int CACHE_ENTRIES = 1024;
+
+    /** Cached mappings of immutable objects, least recently used first. */
+    private static final LinkedHashMap<String, MappedByteBuffer> CACHE =
+        new LinkedHashMap<>(64, 0.75f, true);
+    /** Total size of the cached mappings. */
+    private static long cachedBytes = 0;
+
+    /** Contents of FILE as a read-only buffer positioned at 0. IMMUTABLE says
+     *  FILE is a blob or commit, whose mapping may be cached. */
+    static ByteBuffer buffer(File file, boolean immutable) {
+        if (immutable) {
+            synchronized (CACHE) {
+                MappedByteBuffer cached = CACHE.get(file.getPath());
+                if (cached != null) {
+                    Trace.hit("map");
+                    return cached.duplicate();
+                }
+            }
+        }
+        long length = file.length();
+        if (length < MAP_THRESHOLD) {
+            return ByteBuffer.wrap(Utils.readContents(file)).asReadOnlyBuffer();
+        }
+
+        long start = Trace.start();
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("map", start, length);
+        if (immutable) {
+            remember(file.getPath(), mapped);
+        }
+        return mapped.duplicate();
+    }
+
+    /** Add MAPPED to the cache under PATH, evicting the oldest mappings as needed. */
+    private static void remember(String path, MappedByteBuffer mapped) {
+        synchronized (CACHE) {
+            if (CACHE.put(path, mapped) == null) {
+                cachedBytes += mapped.capacity();
+            }
+            Iterator<Map.Entry<String, MappedByteBuffer>> oldest = CACHE.entrySet().iterator();
+            while ((cachedBytes > CACHE_BYTES || CACHE.size() > CACHE_ENTRIES)
+                   && oldest.hasNext()) {
+                cachedBytes -= oldest.next().getValue().capacity();
+                oldest.remove();
+            }
+        }
+    }
+
+    /** Hex digest of FILE in the repository's object format. */
+    static String hash(File file, boolean immutable) {
+        if (file.length() < MAP_THRESHOLD) {
+            return HashAlgorithm.current().hashFile(file);
+        }
+        return HashAlgorithm.current().hash(buffer(file, immutable));
+    }
+
+    /** Do A and B have the same contents? */
+    static boolean contentEquals(File a, File b, boolean immutable) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        return buffer(a, immutable).equals(buffer(b, immutable));
+    }
+
+    /** Copy SOURCE to DESTINATION, overwriting it, by writing the source buffer
+     *  straight into the destination channel. */
+    static long copy(File source, File destination, boolean immutable) {
+        ByteBuffer contents = buffer(source, immutable);
+        long written = contents.remaining();
+        try (FileChannel out = FileChannel.open(destination.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (contents.hasRemaining()) {
+                out.write(contents);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return written;
+    }
+
+    /** Deserialize an object of type T from FILE, reading through the mapping. */
+    static <T extends Serializable> T readObject(File file, Class<T> expectedClass,
+                                                 boolean immutable) {
+        if (file.length() < MAP_THRESHOLD) {
+            return Utils.readObject(file, expectedClass);
+        }
+        long start = Trace.start();
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferInputStream(buffer(file, immutable)))) {
+            T result = expectedClass.cast(in.readObject());
+            Trace.end("readObject", start, file.length());
+            return result;
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deserialize an object of type T from the remaining bytes of CONTENTS. */
+    static <T extends Serializable> T readObject(ByteBuffer contents, Class<T> expectedClass) {
+        long start = Trace.start();
+        long length = contents.remaining();
+        try (ObjectInputStream in = new ObjectInputStream(new BufferInputStream(contents))) {
+            T result = expectedClass.cast(in.readObject());
+            Trace.end("readObject", start, length);
+            return result;
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** An InputStream over the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] dest, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(dest, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Objects and refs held in the heap of the running process and never written
+ *  to disk, so benchmarks and tests can drive Repository without measuring the
+ *  file system. Everything is lost when the process exits.
+ *  @author Yang Lyu
+ */
+class MemoryStore implements ObjectStore, RefStore {
+
+    /** kind -> object name -> contents */
+    private final Map<String, Map<String, byte[]>> objects = new ConcurrentHashMap<>();
+    /** ref name -> value */
+    private final HashMap<String, String> refs = new HashMap<>();
+
+    @Override
+    public boolean has(String kind, String id) {
+        return kind(kind).containsKey(id);
+    }
+
+    @Override
+    public byte[] read(String kind, String id) {
+        byte[] contents = kind(kind).get(id);
+        if (contents == null) {
+            throw new IllegalArgumentException("no such object: " + kind + "/" + id);
+        }
+        return contents;
+    }
+
+    @Override
+    public void write(String kind, String id, byte[] contents) {
+        kind(kind).put(id, contents);
+    }
+
+    @Override
+    public List<String> list(String kind) {
+        List<String> names = new ArrayList<>(kind(kind).keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public synchronized String get(String name) {
+        return refs.get(name);
+    }
+
+    @Override
+    public synchronized HashMap<String, String> all() {
+        return new HashMap<>(refs);
+    }
+
+    @Override
+    public synchronized void set(String name, String value) {
+        refs.put(name, value);
+    }
+
+    @Override
+    public synchronized void remove(String name) {
+        refs.remove(name);
+    }
+
+    /** The objects of KIND. */
+    private Map<String, byte[]> kind(String kind) {
+        return objects.computeIfAbsent(kind, k -> new ConcurrentHashMap<>());
+    }
+}
@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/** Inverted index over commit messages, used by find.
+ *  Maps each distinct message to the ids of the commits carrying it, each lower-cased
+ *  word to the messages containing it, and each trigram to the messages containing it.
+ *  Substring queries intersect trigram postings and only verify the surviving messages.
+ *  The index lives in .gitlet/index/messages. Commits made since it was last
+ *  saved are appended to .gitlet/index/messages.log, each record being
+ *      length (4 bytes) | CRC-32 (4) | id length (2) | id | message
+ *  and are added back when the index is loaded, so a commit writes a few bytes
+ *  rather than the whole index. Once the log holds FOLD_AT commits, the next
+ *  load folds it into the index, as index rebuild and gc do.
+ *  @author Yang Lyu
+ */
+class MessageIndex implements Serializable {
+
+    /** Where the serialized index is stored. */
+    static final File INDEX_FILE = Utils.join(Repository.GITLET_DIR, "index", "messages");
+    /** Where commits added since the index was saved are logged. */
+    static final File LOG_FILE = Utils.join(Repository.GITLET_DIR, "index", "messages.log");
+    /** Logged commits replayed before the log is folded into the index. */
+    private static final int FOLD_AT = 1024;
+
+    /** message -> ids of commits with exactly that message */
+    private HashMap<String, TreeSet<String>> byMessage = new HashMap<>();
+    /** lower-cased word -> messages containing it */
+    private HashMap<String, HashSet<String>> byToken = new HashMap<>();
+    /** trigram -> messages containing it */
+    private HashMap<String, HashSet<String>> byTrigram = new HashMap<>();
+    /** number of commits indexed */
+    private int size = 0;
+
+    /** Does an index exist for this repository? */
+    static boolean exists() {
+        return INDEX_FILE.isFile();
+    }
+
+    /** Load the index from disk, with the commits logged since it was saved. */
+    static MessageIndex load() {
+        MessageIndex index = Utils.readObject(INDEX_FILE, MessageIndex.class);
+        if (LOG_FILE.isFile() && index.replay(LOG_FILE) >= FOLD_AT) {
+            index.save();
+        }
+        return index;
+    }
+
+    /** Write the index to disk, emptying the log. The index is replaced by a
+     *  rename, so a crash leaves either the old index and log or the new one. */
+    void save() {
+        INDEX_FILE.getParentFile().mkdirs();
+        Durability.writeRef(INDEX_FILE, this);
+        LOG_FILE.delete();
+    }
+
+    /** Add commit ID with MESSAGE to the on-disk index, if the repository has one. */
+    static void record(String id, String message) {
+        recordAll(Repository.GITLET_DIR, Collections.singletonMap(id, message));
+    }
+
+    /** Add each commit id in MESSAGES, with its message, to the index of the
+     *  repository whose .gitlet directory is GITLETDIR, if it has one. */
+    static void recordAll(File gitletDir, Map<String, String> messages) {
+        if (!Utils.join(gitletDir, "index", "messages").isFile() || messages.isEmpty()) {
+            return;
+        }
+        try (FileOutputStream log =
+                 new FileOutputStream(Utils.join(gitletDir, "index", "messages.log"), true)) {
+            for (Map.Entry<String, String> entry : messages.entrySet()) {
+                byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] message = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer payload = ByteBuffer.allocate(2 + id.length + message.length);
+                payload.putShort((short) id.length).put(id).put(message);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                ByteBuffer record = ByteBuffer.allocate(8 + payload.capacity());
+                record.putInt(payload.capacity()).putInt((int) crc.getValue());
+                log.write(record.put(payload.array()).array());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Add the commits recorded in LOG, cutting off a torn or damaged record and
+     *  everything after it, and return how many were added. */
+    private int replay(File log) {
+        int replayed = 0;
+        ByteBuffer records = ByteBuffer.wrap(Utils.readContents(log));
+        while (records.remaining() >= 8) {
+            int length = records.getInt(records.position());
+            if (length < 2 || length > records.remaining() - 8) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            records.get(records.position() + 8, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            int idLength = ByteBuffer.wrap(payload).getShort() & 0xffff;
+            if ((int) crc.getValue() != records.getInt(records.position() + 4)
+                    || idLength > length - 2) {
+                break;
+            }
+            add(new String(payload, 2, idLength, StandardCharsets.UTF_8),
+                new String(payload, 2 + idLength, length - 2 - idLength, StandardCharsets.UTF_8));
+            records.position(records.position() + 8 + length);
+            replayed += 1;
+        }
+        if (records.hasRemaining()) {
+            try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+                file.setLength(records.position());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return replayed;
+    }
+
+    /** Add commit ID with MESSAGE. */
+    void add(String id, String message) {
+        TreeSet<String> ids = byMessage.get(message);
+        if (ids == null) {
+            ids = new TreeSet<>();
+            byMessage.put(message, ids);
+            for (String token : tokens(message)) {
+                byToken.computeIfAbsent(token, k -> new HashSet<>()).add(message);
+            }
+            for (String gram : trigrams(message)) {
+                byTrigram.computeIfAbsent(gram, k -> new HashSet<>()).add(message);
+            }
+        }
+        if (ids.add(id)) {
+            size += 1;
+        }
+    }
+
+    /** Ids of commits whose message equals TARGET, in order. */
+    TreeSet<String> exact(String target) {
+        TreeSet<String> ids = byMessage.get(target);
+        return ids == null ? new TreeSet<>() : ids;
+    }
+
+    /** Ids of commits whose message contains the word TOKEN (case-insensitive). */
+    TreeSet<String> word(String token) {
+        HashSet<String> messages = byToken.get(token.toLowerCase(Locale.ROOT));
+        return idsOf(messages == null ? new HashSet<>() : messages);
+    }
+
+    /** Ids of commits whose message contains PATTERN as a substring. */
+    TreeSet<String> substring(String pattern) {
+        Set<String> candidates = null;
+        for (String gram : trigrams(pattern)) {
+            HashSet<String> posting = byTrigram.get(gram);
+            if (posting == null) {
+                return new TreeSet<>();
+            }
+            if (candidates == null) {
+                candidates = new HashSet<>(posting);
+            } else {
+                candidates.retainAll(posting);
+            }
+        }
+        if (candidates == null) { // pattern shorter than a trigram
+            candidates = byMessage.keySet();
+        }
+        HashSet<String> matches = new HashSet<>();
+        for (String message : candidates) {
+            if (message.contains(pattern)) {
+                matches.add(message);
+            }
+        }
+        return idsOf(matches);
+    }
+
+    /** All commit ids in the index, in order. */
+    TreeSet<String> allIds() {
+        TreeSet<String> all = new TreeSet<>();
+        for (TreeSet<String> ids : byMessage.values()) {
+            all.addAll(ids);
+        }
+        return all;
+    }
+
+    /** Number of commits indexed. */
+    int size() {
+        return size;
+    }
+
+    /** Union of the ids of every message in MESSAGES. */
+    private TreeSet<String> idsOf(Set<String> messages) {
+        TreeSet<String> ids = new TreeSet<>();
+        for (String message : messages) {
+            ids.addAll(byMessage.get(message));
+        }
+        return ids;
+    }
+
+    /** Lower-cased words of MESSAGE. */
+    private static List<String> tokens(String message) {
+        List<String> result = new ArrayList<>();
+        for (String word : message.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Distinct three-character substrings of S. */
+    private static Set<String> trigrams(String s) {
+        HashSet<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            result.add(s.substring(i, i + 3));
+        }
+        return result;
+    }
+}
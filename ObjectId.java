@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/** A blob or commit name held as raw digest bytes rather than as hex text.
+ *  The up to 32 digest bytes (20 for SHA-1, 32 for SHA-256) are packed
+ *  big-endian into four longs, so an id is one small object with no arrays
+ *  behind it, and equality and hashing never touch characters. Ids compare
+ *  in the same order as their hex names.
+ *  @author Yang Lyu
+ */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Digest bytes 0-7, 8-15, 16-23 and 24-31; missing bytes are zero. */
+    final long w0, w1, w2, w3;
+    /** Number of digest bytes. */
+    final int length;
+
+    ObjectId(long w0, long w1, long w2, long w3, int length) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.length = length;
+    }
+
+    /** The id named by the hex numeral HEX. */
+    static ObjectId fromHex(String hex) {
+        return fromBytes(Utils.fromHex(hex));
+    }
+
+    /** The id whose digest is RAW (at most 32 bytes). */
+    static ObjectId fromBytes(byte[] raw) {
+        long[] words = new long[4];
+        for (int i = 0; i < raw.length; i++) {
+            words[i >> 3] |= (raw[i] & 0xffL) << (56 - 8 * (i & 7));
+        }
+        return new ObjectId(words[0], words[1], words[2], words[3], raw.length);
+    }
+
+    /** The id named by HEX, or null if HEX is null. */
+    static ObjectId ofNullable(String hex) {
+        return hex == null ? null : fromHex(hex);
+    }
+
+    /** The raw digest bytes. */
+    byte[] toBytes() {
+        byte[] raw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            raw[i] = (byte) (word(i >> 3) >>> (56 - 8 * (i & 7)));
+        }
+        return raw;
+    }
+
+    /** The hex name of this id. */
+    String toHex() {
+        return Utils.toHex(toBytes());
+    }
+
+    /** Word I of the digest. */
+    long word(int i) {
+        switch (i) {
+            case 0: return w0;
+            case 1: return w1;
+            case 2: return w2;
+            default: return w3;
+        }
+    }
+
+    /** Does this id have the given words? */
+    boolean matches(long x0, long x1, long x2, long x3, int len) {
+        return w0 == x0 && w1 == x1 && w2 == x2 && w3 == x3 && length == len;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId o = (ObjectId) other;
+        return matches(o.w0, o.w1, o.w2, o.w3, o.length);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w0 >>> 32); // digest bits are already uniformly spread
+    }
+
+    @Override
+    public int compareTo(ObjectId o) {
+        for (int i = 0; i < 4; i++) {
+            int c = Long.compareUnsigned(word(i), o.word(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(length, o.length);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
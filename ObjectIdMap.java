@@ -0,0 +1,99 @@
+package gitlet;
+
+/** A map from ObjectIds to values using open addressing with linear probing.
+ *  Keys are stored inline as four longs per slot, as in ObjectIdSet, so
+ *  get and containsKey allocate nothing. Null values are not allowed.
+ *  @author Yang Lyu
+ */
+class ObjectIdMap<V> {
+
+    /** Key digest words, four per slot. */
+    private long[] words;
+    /** Key digest length per slot; 0 marks an empty slot. */
+    private byte[] lengths;
+    /** Value per slot. */
+    private Object[] values;
+    /** Number of entries. */
+    private int size;
+
+    ObjectIdMap() {
+        this(16);
+    }
+
+    /** A map sized for about EXPECTED entries. */
+    ObjectIdMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        words = new long[4 * capacity];
+        lengths = new byte[capacity];
+        values = new Object[capacity];
+    }
+
+    /** Number of entries. */
+    int size() {
+        return size;
+    }
+
+    /** Is KEY mapped? */
+    boolean containsKey(ObjectId key) {
+        return lengths[slot(key)] != 0;
+    }
+
+    /** The value of KEY, or null if it is not mapped. */
+    @SuppressWarnings("unchecked")
+    V get(ObjectId key) {
+        return (V) values[slot(key)];
+    }
+
+    /** Map KEY to VALUE, returning the previous value or null. */
+    @SuppressWarnings("unchecked")
+    V put(ObjectId key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null value in ObjectIdMap");
+        }
+        int slot = slot(key);
+        V previous = (V) values[slot];
+        if (lengths[slot] == 0) {
+            words[4 * slot] = key.w0;
+            words[4 * slot + 1] = key.w1;
+            words[4 * slot + 2] = key.w2;
+            words[4 * slot + 3] = key.w3;
+            lengths[slot] = (byte) key.length;
+            size += 1;
+        }
+        values[slot] = value;
+        if (2 * size > lengths.length) {
+            grow();
+        }
+        return previous;
+    }
+
+    /** The slot holding KEY, or the empty slot where it would go. */
+    private int slot(ObjectId key) {
+        int mask = lengths.length - 1;
+        int slot = ObjectIdSet.mix(key.w0) & mask;
+        while (lengths[slot] != 0
+               && !key.matches(words[4 * slot], words[4 * slot + 1], words[4 * slot + 2],
+                               words[4 * slot + 3], lengths[slot])) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Double the table and reinsert every entry. */
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        long[] oldWords = words;
+        byte[] oldLengths = lengths;
+        Object[] oldValues = values;
+        words = new long[2 * oldWords.length];
+        lengths = new byte[2 * oldLengths.length];
+        values = new Object[2 * oldValues.length];
+        size = 0;
+        for (int i = 0; i < oldLengths.length; i++) {
+            if (oldLengths[i] != 0) {
+                put(new ObjectId(oldWords[4 * i], oldWords[4 * i + 1], oldWords[4 * i + 2],
+                                 oldWords[4 * i + 3], oldLengths[i]), (V) oldValues[i]);
+            }
+        }
+    }
+}
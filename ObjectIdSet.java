@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A set of ObjectIds using open addressing with linear probing.
+ *  Ids are stored inline as four longs per slot rather than as references,
+ *  so the set costs about 40 bytes per member and lookups allocate nothing.
+ *  Used to mark commits as visited during graph walks.
+ *  @author Yang Lyu
+ */
+class ObjectIdSet {
+
+    /** Digest words, four per slot. */
+    private long[] words;
+    /** Digest length per slot; 0 marks an empty slot. */
+    private byte[] lengths;
+    /** Number of members. */
+    private int size;
+
+    ObjectIdSet() {
+        this(16);
+    }
+
+    /** A set sized for about EXPECTED members. */
+    ObjectIdSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        words = new long[4 * capacity];
+        lengths = new byte[capacity];
+    }
+
+    /** Number of members. */
+    int size() {
+        return size;
+    }
+
+    /** Is ID a member? */
+    boolean contains(ObjectId id) {
+        return lengths[slot(id)] != 0;
+    }
+
+    /** Add ID; returns false if it was already a member. */
+    boolean add(ObjectId id) {
+        int slot = slot(id);
+        if (lengths[slot] != 0) {
+            return false;
+        }
+        words[4 * slot] = id.w0;
+        words[4 * slot + 1] = id.w1;
+        words[4 * slot + 2] = id.w2;
+        words[4 * slot + 3] = id.w3;
+        lengths[slot] = (byte) id.length;
+        size += 1;
+        if (2 * size > lengths.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /** The slot holding ID, or the empty slot where it would go. */
+    private int slot(ObjectId id) {
+        int mask = lengths.length - 1;
+        int slot = mix(id.w0) & mask;
+        while (lengths[slot] != 0
+               && !id.matches(words[4 * slot], words[4 * slot + 1], words[4 * slot + 2],
+                              words[4 * slot + 3], lengths[slot])) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Double the table and reinsert every member. */
+    private void grow() {
+        long[] oldWords = words;
+        byte[] oldLengths = lengths;
+        words = new long[2 * oldWords.length];
+        lengths = new byte[2 * oldLengths.length];
+        size = 0;
+        for (int i = 0; i < oldLengths.length; i++) {
+            if (oldLengths[i] != 0) {
+                add(new ObjectId(oldWords[4 * i], oldWords[4 * i + 1], oldWords[4 * i + 2],
+                                 oldWords[4 * i + 3], oldLengths[i]));
+            }
+        }
+    }
+
+    /** Remove every member. */
+    void clear() {
+        Arrays.fill(lengths, (byte) 0);
+        size = 0;
+    }
+
+    /** Spread the high digest bits into a table index. */
+    static int mix(long w0) {
+        return (int) (w0 >>> 32) ^ (int) w0;
+    }
+}
@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** Where a repository keeps its objects: commits, file tables ("trees") and
+ *  blobs, each an immutable byte string named by its hash within its kind.
+ *  Storage picks the backend when the repository is created.
+ *  @author Yang Lyu
+ */
+interface ObjectStore {
+
+    /** The kinds of object. */
+    String COMMITS = "commits", TREES = "trees", BLOBS = "blobs";
+
+    /** Is there an object ID of KIND? */
+    boolean has(String kind, String id);
+
+    /** Contents of object ID of KIND. */
+    byte[] read(String kind, String id);
+
+    /** Store CONTENTS as object ID of KIND. */
+    void write(String kind, String id, byte[] contents);
+
+    /** Names of every object of KIND, in order. */
+    List<String> list(String kind);
+
+    /** Deserialize object ID of KIND as an EXPECTEDCLASS. */
+    default <T extends Serializable> T readObject(String kind, String id, Class<T> expectedClass) {
+        return MappedObjects.readObject(ByteBuffer.wrap(read(kind, id)), expectedClass);
+    }
+
+    /** Store the contents of SOURCE as object ID of KIND, unless it is already stored. */
+    default void writeFile(String kind, String id, File source) {
+        if (!has(kind, id)) {
+            write(kind, id, Utils.readContents(source));
+        }
+    }
+
+    /** Write the contents of object ID of KIND to DESTINATION. */
+    default void readFile(String kind, String id, File destination) {
+        Utils.writeContents(destination, read(kind, id));
+    }
+}
@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Moves history from one local repository to another (clone, fetch, push).
+ *  Negotiation is a walk of the source graph from the ref being sent that stops
+ *  at every commit the destination already has, so only new history is visited.
+ *  Blobs are only checked where a new commit differs from its first parent.
+ *  Blobs and file tables are copied before commits, and commits are copied
+ *  parents first, so a commit present in the destination always has its whole
+ *  history there; an interrupted transfer can simply be rerun.
+ *  @author Yang Lyu
+ */
+class ObjectTransfer {
+
+    /** Source and destination .gitlet directories. */
+    private final File from, to;
+    /** Copy blobs too? A partial (--shared) clone leaves them in the source. */
+    private final boolean withBlobs;
+    /** Commits copied, with their messages, oldest first. */
+    final LinkedHashMap<String, String> commitsCopied = new LinkedHashMap<>();
+    /** Blobs copied. */
+    int blobsCopied = 0;
+    /** Names of the blobs copied. */
+    private final List<String> blobNames = new ArrayList<>();
+    /** Bytes copied. */
+    long bytesCopied = 0;
+
+    ObjectTransfer(File from, File to, boolean withBlobs) {
+        this.from = from;
+        this.to = to;
+        this.withBlobs = withBlobs;
+    }
+
+    /** Copy every commit reachable from TIP that the destination lacks, with
+     *  the blobs they track. */
+    void copyHistory(String tip) {
+        long start = Trace.start();
+        HashMap<String, Commit> missing = findMissing(tip);
+        List<String> order = parentsFirst(tip, missing);
+
+        if (withBlobs) {
+            for (String id : order) {
+                copyBlobs(missing.get(id), missing);
+            }
+        }
+        for (String id : order) {
+            copyTree(missing.get(id));
+        }
+        for (String id : order) {
+            copy(Utils.join(from, "commits", id), Utils.join(to, "commits", id));
+            commitsCopied.put(id, missing.get(id).getMessage());
+        }
+        KnownObjects.recordAll(to, blobNames);
+        Trace.end("transfer", start, bytesCopied);
+    }
+
+    /** The commits reachable from TIP that the destination does not have. */
+    private HashMap<String, Commit> findMissing(String tip) {
+        HashMap<String, Commit> missing = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(tip);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (missing.containsKey(id) || Utils.join(to, "commits", id).exists()) {
+                continue; // already have it, and therefore all of its history
+            }
+            Commit commit = read(id);
+            missing.put(id, commit);
+            for (String parent : parents(commit)) {
+                queue.add(parent);
+            }
+        }
+        return missing;
+    }
+
+    /** The ids in MISSING reachable from TIP, each after all of its parents. */
+    private static List<String> parentsFirst(String tip, HashMap<String, Commit> missing) {
+        List<String> order = new ArrayList<>();
+        ObjectIdSet placed = new ObjectIdSet(missing.size());
+        Deque<String> stack = new ArrayDeque<>();
+        if (missing.containsKey(tip)) {
+            stack.push(tip);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            boolean ready = true;
+            for (String parent : parents(missing.get(id))) {
+                if (missing.containsKey(parent) && !placed.contains(ObjectId.fromHex(parent))) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                if (placed.add(ObjectId.fromHex(id))) {
+                    order.add(id);
+                }
+            }
+        }
+        return order;
+    }
+
+    /** Copy the blobs COMMIT tracks that its first parent does not, where the
+     *  destination lacks them. MISSING holds the commits being sent. */
+    private void copyBlobs(Commit commit, HashMap<String, Commit> missing) {
+        Map<String, String> parentFiles = Collections.emptyMap();
+        String parent = commit.getParent();
+        if (parent != null) {
+            Commit parentCommit = missing.containsKey(parent) ? missing.get(parent) : read(parent);
+            parentFiles = parentCommit.getTrackedFiles();
+        }
+        for (Map.Entry<String, String> entry : commit.getTrackedFiles().entrySet()) {
+            String hash = entry.getValue();
+            if (hash.equals(parentFiles.get(entry.getKey()))) {
+                continue; // unchanged since the parent, so already handled
+            }
+            File target = Utils.join(to, "blobs", hash);
+            File manifest = Utils.join(from, "manifests", hash);
+            if (manifest.exists()) {
+                copyChunked(hash, manifest);
+            } else if (!target.exists()) {
+                copy(Utils.join(from, "blobs", hash), target);
+                blobsCopied += 1;
+                blobNames.add(hash);
+            }
+        }
+    }
+
+    /** Copy the chunked blob HASH, whose manifest is MANIFEST, with whichever of
+     *  its chunks the destination lacks. The manifest goes last. */
+    private void copyChunked(String hash, File manifest) {
+        File target = Utils.join(to, "manifests", hash);
+        if (target.exists()) {
+            return;
+        }
+        Utils.join(to, "chunks").mkdir();
+        for (String chunk : Utils.readObject(manifest, ChunkStore.Manifest.class).chunks) {
+            File chunkTarget = Utils.join(to, "chunks", chunk);
+            if (!chunkTarget.exists()) {
+                copy(Utils.join(from, "chunks", chunk), chunkTarget);
+            }
+        }
+        target.getParentFile().mkdir();
+        copy(manifest, target);
+        blobsCopied += 1;
+        blobNames.add(hash);
+    }
+
+    /** Copy the file table of COMMIT, unless it is inline or already present. */
+    private void copyTree(Commit commit) {
+        if (commit.getTreeId() == null) {
+            return;
+        }
+        File target = Utils.join(to, "trees", commit.getTreeId());
+        if (!target.exists()) {
+            target.getParentFile().mkdir();
+            copy(Utils.join(from, "trees", commit.getTreeId()), target);
+        }
+    }
+
+    /** Read commit ID from the source. */
+    private Commit read(String id) {
+        Commit commit = MappedObjects.readObject(Utils.join(from, "commits", id),
+                Commit.class, true);
+        commit.setTreeDir(Utils.join(from, "trees"));
+        return commit;
+    }
+
+    /** Parents of COMMIT that are recorded by id. */
+    private static List<String> parents(Commit commit) {
+        List<String> result = new ArrayList<>(2);
+        if (commit.getParent() != null) {
+            result.add(commit.getParent());
+        }
+        if (commit.getMergeParent() != null) {
+            result.add(commit.getMergeParent());
+        }
+        return result;
+    }
+
+    /** Copy SOURCE to TARGET. */
+    private void copy(File source, File target) {
+        copyAtomically(source, target);
+        bytesCopied += target.length();
+    }
+
+    /** Copy SOURCE to TARGET through a temporary file and a rename, so a reader
+     *  never sees a partially written object. */
+    static void copyAtomically(File source, File target) {
+        try {
+            File partial = partialFile(target);
+            Files.copy(source.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durability.wrote(target);
+    }
+
+    /** Write the remaining bytes of CONTENTS to TARGET through a temporary file
+     *  and a rename, so a crash never leaves a partly written object behind. */
+    static void writeAtomically(ByteBuffer contents, File target) {
+        try {
+            File partial = partialFile(target);
+            try (FileChannel out = FileChannel.open(partial.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (contents.hasRemaining()) {
+                    out.write(contents);
+                }
+            }
+            Files.move(partial.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durability.wrote(target);
+    }
+
+    /** A new temporary file for writing TARGET, an object in .gitlet/KIND/, kept in
+     *  that repository's .gitlet/tmp: on the same file system, so it can be renamed
+     *  into place, but out of the object directories, so a crash never leaves it
+     *  where global-log, find or gc would list it. */
+    static File partialFile(File target) throws IOException {
+        target.getParentFile().mkdir(); // object directories are made on first use
+        File tmp = Utils.join(target.getParentFile().getParentFile(), "tmp");
+        tmp.mkdir();
+        return Files.createTempFile(tmp.toPath(), target.getName(), ".partial").toFile();
+    }
+}
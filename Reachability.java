@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/** Reachability bitmaps over the commit graph.
+ *  Every commit gets a stable number the first time it is seen, always after
+ *  its parents, so numbers never change once handed out. The parents of each
+ *  commit are kept by number, and every SPACING-th commit also stores a
+ *  CompressedBitmap of all the commits it can reach. The set reachable from
+ *  any commit is then a short walk back to the nearest stored bitmaps, which
+ *  turns ancestor checks and "in A but not in B" counts into bitmap lookups
+ *  and unions instead of walks over the whole history.
+ *  The index lives in .gitlet/bitmaps/reachability and grows as commits are queried.
+ *  @author Yang Lyu
+ */
+class Reachability implements Serializable {
+
+    /** Where the serialized index is stored. */
+    static final File INDEX_FILE = Utils.join(Repository.GITLET_DIR, "bitmaps", "reachability");
+    /** Every commit whose number is a multiple of this stores its bitmap. */
+    private static final int SPACING = 32;
+
+    /** commit number -> commit id */
+    private final ArrayList<ObjectId> ids = new ArrayList<>();
+    /** commit number -> numbers of its parents */
+    private final ArrayList<int[]> parents = new ArrayList<>();
+    /** commit number -> reachability bitmap, for selected commits only */
+    private final HashMap<Integer, CompressedBitmap> bitmaps = new HashMap<>();
+
+    /** commit id -> number; rebuilt from ids after loading */
+    private transient ObjectIdMap<Integer> numbers;
+    /** Have numbers been handed out since loading? */
+    private transient boolean changed;
+
+    /** Load the index from disk, or start an empty one if it is missing or was
+     *  written by another version. */
+    static Reachability load() {
+        Reachability index = new Reachability();
+        if (INDEX_FILE.isFile()) {
+            try {
+                index = Utils.readObject(INDEX_FILE, Reachability.class);
+            } catch (IllegalArgumentException excp) {
+                index.changed = true; // rebuilt as commits are queried
+            }
+        }
+        index.numbers = new ObjectIdMap<>(index.ids.size());
+        for (int n = 0; n < index.ids.size(); n++) {
+            index.numbers.put(index.ids.get(n), n);
+        }
+        return index;
+    }
+
+    /** Write the index to disk if it has grown. */
+    void save() {
+        if (changed) {
+            INDEX_FILE.getParentFile().mkdirs();
+            Utils.writeObject(INDEX_FILE, this);
+            changed = false;
+        }
+    }
+
+    /** Throw the index away; it is rebuilt on the next query. */
+    static void discard() {
+        INDEX_FILE.delete();
+    }
+
+    /** Number of commit ID, numbering it and any unnumbered ancestors first.
+     *  PARENTSOF reads the parents of a commit from the object store. */
+    int number(ObjectId id, Function<ObjectId, ObjectId[]> parentsOf) {
+        Integer known = numbers.get(id);
+        if (known != null) {
+            return known;
+        }
+        // depth-first, handing out a number only once all parents have one
+        ArrayList<ObjectId> stack = new ArrayList<>();
+        ArrayList<ObjectId[]> pending = new ArrayList<>();
+        stack.add(id);
+        pending.add(parentsOf.apply(id));
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            ObjectId next = null;
+            for (ObjectId p : pending.get(top)) {
+                if (!numbers.containsKey(p)) {
+                    next = p;
+                    break;
+                }
+            }
+            if (next != null) {
+                stack.add(next);
+                pending.add(parentsOf.apply(next));
+                continue;
+            }
+            ObjectId[] ps = pending.remove(top);
+            assign(stack.remove(top), ps);
+        }
+        return numbers.get(id);
+    }
+
+    /** Give commit ID with parents PS the next number. */
+    private void assign(ObjectId id, ObjectId[] ps) {
+        if (numbers.containsKey(id)) { // reached twice through a merge
+            return;
+        }
+        int n = ids.size();
+        int[] ns = new int[ps.length];
+        for (int i = 0; i < ps.length; i++) {
+            ns[i] = numbers.get(ps[i]);
+        }
+        ids.add(id);
+        parents.add(ns);
+        numbers.put(id, n);
+        changed = true;
+        if (n % SPACING == 0) {
+            bitmaps.put(n, reach(n));
+        }
+    }
+
+    /** Numbers of every commit reachable from commit N, N included. */
+    CompressedBitmap reach(int n) {
+        CompressedBitmap stored = bitmaps.get(n);
+        if (stored != null) {
+            return stored.copy();
+        }
+        CompressedBitmap result = new CompressedBitmap();
+        ArrayList<Integer> queue = new ArrayList<>();
+        queue.add(n);
+        result.add(n);
+        for (int i = 0; i < queue.size(); i++) {
+            for (int p : parents.get(queue.get(i))) {
+                if (result.contains(p)) {
+                    continue;
+                }
+                CompressedBitmap below = bitmaps.get(p);
+                if (below != null) {
+                    result.or(below); // covers p and everything behind it
+                } else {
+                    result.add(p);
+                    queue.add(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Numbers of every commit reachable from ID. */
+    CompressedBitmap reach(ObjectId id, Function<ObjectId, ObjectId[]> parentsOf) {
+        return reach(number(id, parentsOf));
+    }
+
+    /** Is commit ANCESTOR reachable from commit DESCENDANT (or the same commit)? */
+    boolean isAncestor(ObjectId ancestor, ObjectId descendant,
+                       Function<ObjectId, ObjectId[]> parentsOf) {
+        int a = number(ancestor, parentsOf);
+        return reach(number(descendant, parentsOf)).contains(a);
+    }
+
+    /** Numbers of the parents of commit number N. */
+    int[] parents(int n) {
+        return parents.get(n);
+    }
+
+    /** Number of commits numbered so far. */
+    int size() {
+        return ids.size();
+    }
+
+    /** The id of commit number N. */
+    ObjectId idOf(int n) {
+        return ids.get(n);
+    }
+}
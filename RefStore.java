@@ -0,0 +1,23 @@
+package gitlet;
+
+import java.util.HashMap;
+
+/** Where a repository keeps its refs: each branch name maps to a commit id,
+ *  and "head" maps to the name of the current branch.
+ *  @author Yang Lyu
+ */
+interface RefStore {
+
+    /** The value of ref NAME, or null if there is no such ref. */
+    String get(String name);
+
+    /** A copy of every ref, name -> value. */
+    HashMap<String, String> all();
+
+    /** Point ref NAME at VALUE. Objects written before the call are made as
+     *  durable as the durability mode asks before the ref changes. */
+    void set(String name, String value);
+
+    /** Delete ref NAME. */
+    void remove(String name);
+}
@@ -1,15 +1,18 @@
 package gitlet;
 import java.io.File;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.text.SimpleDateFormat;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Utils.*;
 
@@ -39,6 +42,8 @@ public class Repository {
     public static final File COMMIT_DIR = join(GITLET_DIR, "commits");
     /** folder of all Blobs */
     public static final File BLOB_DIR = join(GITLET_DIR, "blobs");
+    /** folder of the file tables of commits */
+    public static final File TREE_DIR = join(GITLET_DIR, "trees");
     /** folder of all pointers */
     public static final File POINTER_DIR = join(GITLET_DIR, "pointers");
 
@@ -47,27 +52,46 @@ public class Repository {
      * Initialize repo. Create all directories.
      */
     public Repository() {
+        this(HashAlgorithm.SHA1);
+    }
+
+    /**
+     * Initialize repo whose objects are named by FORMAT digests.
+     */
+    public Repository(HashAlgorithm format) {
+        this(format, Storage.LOOSE);
+    }
+
+    /**
+     * Initialize repo whose objects are named by FORMAT digests and kept by the
+     * storage backend STORAGE.
+     */
+    public Repository(HashAlgorithm format, String storage) {
         if (GITLET_DIR.exists()) {
             System.out.println("A Gitlet version-control system "
                     + "already exists in the current directory.");
         } else {
             // initialize directories
             GITLET_DIR.mkdir();
-            COMMIT_DIR.mkdir();
             STAGING_DIR.mkdir();
             REMOVAL_DIR.mkdir();
-            BLOB_DIR.mkdir();
-            POINTER_DIR.mkdir();
+            if (storage.equals(Storage.LOOSE)) {
+                COMMIT_DIR.mkdir();
+                BLOB_DIR.mkdir();
+                TREE_DIR.mkdir();
+                POINTER_DIR.mkdir();
+            }
+            Config.set("objectformat", format.formatName());
+            Storage.create(storage);
 
             // make first empty commit. Serialize, get hash, and store using hash name.
             Commit firstCommit = new Commit();
-            String hashSerializedFirstCommit = getHashBySerializingCommit(firstCommit);
-            File firstCommitFile = join(COMMIT_DIR, hashSerializedFirstCommit);
-            Utils.writeObject(firstCommitFile, firstCommit);
+            String hashSerializedFirstCommit = storeCommit(firstCommit);
 
-            // create and store pointer object (contains hashmap of branches)
-            Pointer tmp = new Pointer();
-            Utils.writeObject(Utils.join(POINTER_DIR, "pointer"), tmp);
+            // start the message index used by find
+            MessageIndex index = new MessageIndex();
+            index.add(hashSerializedFirstCommit, firstCommit.getMessage());
+            index.save();
 
             // Set master branch. head is pointing at master initially.
             setPointer("master", hashSerializedFirstCommit);
@@ -113,6 +137,33 @@ public class Repository {
         }
     }
 
+    /**
+     * add -A: stage every change in the working tree: new and modified files are
+     * staged for addition, and tracked files deleted from CWD are staged for removal.
+     * Files outside the sparse-checkout set are missing on purpose and stay tracked.
+     */
+    public static void addAll() {
+        HashMap<String, String> trackedFiles = getTrackedFilesFromCommitPtr("head");
+        HashMap<String, String> cwdFiles = WorkTree.snapshot();
+        for (Map.Entry<String, String> entry : cwdFiles.entrySet()) {
+            String f = entry.getKey();
+            Utils.join(REMOVAL_DIR, f).delete(); // back in CWD, so no longer removed
+            File fileInStaging = Utils.join(STAGING_DIR, f);
+            if (entry.getValue().equals(trackedFiles.get(f))) {
+                fileInStaging.delete();
+            } else if (!fileInStaging.exists()
+                    || !getHashBySerializingFile(fileInStaging).equals(entry.getValue())) {
+                copyPaste(Utils.join(CWD, f), fileInStaging);
+            }
+        }
+        for (String f : trackedFiles.keySet()) {
+            if (!cwdFiles.containsKey(f) && Sparse.includes(f)
+                    && !Utils.join(REMOVAL_DIR, f).exists()) {
+                rm(f);
+            }
+        }
+    }
+
     /**
      * Remove files either from staging are or current commit.
      */
@@ -133,7 +184,7 @@ public class Repository {
             if (key.equals(filename)) {
                 // copy blob to removal area
                 String hash = trackedFiles.get(key);
-                copyPaste(Utils.join(BLOB_DIR, hash), Utils.join(REMOVAL_DIR, filename));
+                restoreBlob(hash, Utils.join(REMOVAL_DIR, filename));
                 // delete from CWD
                 File inCWD = join(CWD, filename);
                 if (inCWD.exists()) {
@@ -153,9 +204,18 @@ public class Repository {
      * Make commit
      */
     public static void commit(String message) {
+        commit(message, null);
+    }
+
+    /**
+     * Make commit; MERGEPARENT is the merged-in commit, or null for an ordinary commit.
+     */
+    public static void commit(String message, String mergeParent) {
         // create new commit; parent is previous head.
         String parentCommitHash = getCommitIDFromPtr("head");
-        Commit newCommit = new Commit(message, parentCommitHash);
+        Commit newCommit = mergeParent == null
+                ? new Commit(message, parentCommitHash)
+                : new Commit(message, parentCommitHash, mergeParent);
 
         // anything in staging area?
         List<String> stagedFiles = Utils.plainFilenamesIn(STAGING_DIR); // staging area
@@ -167,11 +227,13 @@ public class Repository {
 
         // copy tracked files ((keys, val) hashmap pairs) from old commit to new one.
         HashMap<String, String> trackedFiles = getTrackedFilesFromCommitPtr("head");
+        List<String> changed = new ArrayList<>(); // paths for the changed-path filter
         for (String key : trackedFiles.keySet()) {
             // if the tracked file is in removal area, untrack. Delete it from removal area.
             if (removalFiles.contains(key)) {
                 File tmp = Utils.join(REMOVAL_DIR, key);
                 tmp.delete();
+                changed.add(key);
                 continue;
             }
             newCommit.trackNewFile(key, trackedFiles.get(key));
@@ -181,17 +243,19 @@ public class Repository {
         for (String f : stagedFiles) {
             File toAdd = Utils.join(STAGING_DIR, f);
             String hash = getHashBySerializingFile(toAdd);
-            File toBlob = Utils.join(BLOB_DIR, hash);
 
-            copyPaste(toAdd, toBlob); // copy from staging to blob
+            storeBlob(toAdd, hash); // copy from staging to blob
             newCommit.trackNewFile(f, hash); // track this new file
             toAdd.delete(); // clear staging area
+            if (!hash.equals(trackedFiles.get(f))) {
+                changed.add(f);
+            }
         }
+        newCommit.setChangedPaths(ChangedPaths.filterOf(changed));
 
         // store new commit
-        String hashSerializedNewCommit = getHashBySerializingCommit(newCommit);
-        File pathCommit = Utils.join(COMMIT_DIR, hashSerializedNewCommit);
-        Utils.writeObject(pathCommit, newCommit);
+        String hashSerializedNewCommit = storeCommit(newCommit);
+        MessageIndex.record(hashSerializedNewCommit, message);
 
         // advance current branch point to new commit. Also advance head.
         String currBranch = getCurrentBranchName();
@@ -231,9 +295,8 @@ public class Repository {
     private static void checkoutHelper(String filename, String hash) {
         // if found file in commit of corresponding hashcode, copy to CWD.
         if (hash != null) {
-            File orig = Utils.join(BLOB_DIR, hash);
             File dest = Utils.join(CWD, filename);
-            copyPaste(orig, dest); // overwrite!
+            restoreBlob(hash, dest); // overwrite!
         } else {
             System.out.println("File does not exist in that commit.");
         }
@@ -258,9 +321,7 @@ public class Repository {
 
         HashMap<String, String> newTrackedFiles = getTrackedFilesFromCommitPtr(branch);
 
-        checkoutBranchHelper(newTrackedFiles);
-
-        setPointer("head", branch);
+        checkoutBranchHelper(newTrackedFiles, "head", branch);
     }
 
     /**
@@ -285,490 +346,1487 @@ public class Repository {
     }
 
     /**
-     * Checkout branch helper: update CWD!
+     * Exit if switching from OLDTRACKEDFILES to NEWTRACKEDFILES would overwrite an
+     * untracked file in CWD. Files outside the sparse-checkout set are never written,
+     * so they are not checked.
      */
-    public static boolean checkoutBranchHelper(HashMap<String, String> newTrackedFiles) {
-        HashMap<String, String> oldTrackedFiles = getTrackedFilesFromCommitPtr("head");
-
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+    private static void untrackedFileCheck(HashMap<String, String> oldTrackedFiles,
+                                           HashMap<String, String> newTrackedFiles) {
+        // only files in the target commit alone can be overwritten
+        ArrayList<String> candidates = new ArrayList<>();
+        for (String f : newTrackedFiles.keySet()) {
+            if (!oldTrackedFiles.containsKey(f) && Sparse.includes(f)) {
+                candidates.add(f);
+            }
+        }
+        HashMap<String, String> cwdFiles = WorkTree.hashesOf(candidates);
 
         // if untracked file exist:
-        if (cwdFiles.size() != 0) {
-            for (String f : cwdFiles) {
-
-                String oldCommitHash = oldTrackedFiles.get(f);
-                String targetCommitHash = newTrackedFiles.get(f);
-                String cwdHash = getHashBySerializingFile(Utils.join(CWD, f)); // never null
-
-                if (targetCommitHash != null) { // part of target commit
-                    if (oldCommitHash == null) { // not part of current commit
-                        if (!targetCommitHash.equals(cwdHash)) { // will overwrite
-                            if (!isTrackingInStaging(f)) { // not "tracked" in staging area
-                                System.out.println("There is an untracked file in the way;"
-                                        + " delete it, or add and commit it first.");
-                                System.exit(0);
-                            }
-                        }
-                    }
+        for (Map.Entry<String, String> entry : cwdFiles.entrySet()) {
+            String f = entry.getKey();
+            if (!newTrackedFiles.get(f).equals(entry.getValue())) { // will overwrite
+                if (!isTrackingInStaging(f)) { // not "tracked" in staging area
+                    System.out.println("There is an untracked file in the way;"
+                            + " delete it, or add and commit it first.");
+                    System.exit(0);
                 }
             }
         }
+    }
+
+    /**
+     * Checkout branch helper: update CWD to NEWTRACKEDFILES, then set each pointer in
+     * POINTERS, given as name, value pairs. The switch is journaled first, so if it is
+     * interrupted it can be finished with checkout --continue or undone with
+     * checkout --abort.
+     */
+    public static void checkoutBranchHelper(HashMap<String, String> newTrackedFiles,
+                                            String... pointers) {
+        HashMap<String, String> oldTrackedFiles = getTrackedFilesFromCommitPtr("head");
+
+        untrackedFileCheck(oldTrackedFiles, newTrackedFiles);
 
         // old: A, B. new: A', C. Should: update A, delete B (alert!), add C.
+        // Files outside the sparse-checkout set are left alone.
+        CheckoutJournal journal = new CheckoutJournal();
         for (String key : oldTrackedFiles.keySet()) {
+            if (!Sparse.includes(key)) {
+                continue;
+            }
+            String oldCommitHash = oldTrackedFiles.get(key);
             if (newTrackedFiles.containsKey(key)) { // A -> A', remove B
-                String oldCommitHash = oldTrackedFiles.get(key);
                 String cwdHash = newTrackedFiles.get(key);
                 if (!oldCommitHash.equals(cwdHash)) { // should update
-                    copyPaste(Utils.join(BLOB_DIR, cwdHash), Utils.join(CWD, key));
+                    journal.step(key, cwdHash, oldCommitHash);
                 }
             } else { // delete B
-                Utils.join(CWD, key).delete();
+                journal.step(key, null, oldCommitHash);
             }
         }
 
         for (String key : newTrackedFiles.keySet()) {
-            if (!oldTrackedFiles.containsKey(key)) { // C -> C
-                String cwdHash = newTrackedFiles.get(key);
-                copyPaste(Utils.join(BLOB_DIR, cwdHash), Utils.join(CWD, key));
+            if (!oldTrackedFiles.containsKey(key) && Sparse.includes(key)) { // C -> C
+                // untrackedFileCheck passed, so an unstaged C in CWD already matches
+                if (!Utils.join(CWD, key).exists() || Utils.join(STAGING_DIR, key).exists()) {
+                    journal.step(key, newTrackedFiles.get(key), null);
+                }
+            }
+        }
+
+        HashMap<String, String> p = getPointer();
+        for (int i = 0; i + 1 < pointers.length; i += 2) {
+            journal.oldPointers.putIfAbsent(pointers[i], p.get(pointers[i]));
+            journal.newPointers.put(pointers[i], pointers[i + 1]);
+        }
+        journal.begin();
+        applyCheckout(journal, 0);
+    }
+
+    /**
+     * Apply the steps of JOURNAL from step FROM on, batch by batch, reporting progress
+     * on stderr for large switches; then clean up the staging and removal areas, move
+     * the pointers and drop the journal.
+     */
+    private static void applyCheckout(CheckoutJournal journal, int from) {
+        int total = journal.size();
+        boolean report = total - from > CheckoutJournal.BATCH;
+        for (int i = from; i < total; i++) {
+            File inCWD = Utils.join(CWD, journal.names.get(i));
+            String hash = journal.newBlobs.get(i);
+            if (hash == null) {
+                inCWD.delete();
+            } else {
+                restoreBlob(hash, inCWD);
+            }
+            if ((i + 1) % CheckoutJournal.BATCH == 0 || i + 1 == total) {
+                CheckoutJournal.recordProgress(i + 1);
+                if (report) {
+                    System.err.printf("\rUpdating files: %d%% (%d/%d)",
+                            100L * (i + 1) / total, i + 1, total);
+                }
             }
         }
+        if (report) {
+            System.err.println(", done.");
+        }
 
         // clean up staging and removal area.
         cleanDir(STAGING_DIR);
         cleanDir(REMOVAL_DIR);
-        return true;
+        for (Map.Entry<String, String> entry : journal.newPointers.entrySet()) {
+            setPointer(entry.getKey(), entry.getValue());
+        }
+        CheckoutJournal.finish();
     }
 
     /**
-     * Basically do checkout-branch on a commit. Update all files and pointers.
+     * checkout --continue: finish an interrupted switch, skipping the batches already
+     * recorded as done.
      */
-    public static void reset(String commitID) {
-        File commitFile = Utils.join(COMMIT_DIR, commitID);
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
+    public static void continueCheckout() {
+        if (!CheckoutJournal.exists()) {
+            System.out.println("No checkout in progress.");
             return;
         }
-
-        Commit commit = getCommitFromID(commitID);
-        HashMap<String, String> newTrackedFiles = commit.getTrackedFiles();
-
-        checkoutBranchHelper(newTrackedFiles);
-
-        // move both branch and head pointer back. // TODO? or not?
-        setPointer(getCurrentBranchName(), commitID);
-        setPointer("head", getCurrentBranchName());
-//        setPointer("head", commitID);
+        applyCheckout(CheckoutJournal.load(), CheckoutJournal.progress());
     }
 
-
     /**
-     * log helper: print!
+     * checkout --abort: undo an interrupted switch, putting back every file the applied
+     * steps (and the batch in flight) replaced, and restoring the pointers.
      */
-    public static void logHelper(Commit commit, String currCommitHash) {
-        Date time = commit.getTimeStamp();
-
-        SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM dd hh:mm:ss yyyy");
-        sdf.setTimeZone(TimeZone.getTimeZone("PST"));
-        String date = sdf.format(time);
-
-        System.out.println("===");
-        System.out.println("commit " + currCommitHash);
-
-        String message = commit.getMessage();
-        if (message.contains("Merged ")) {
-            String[] words = message.split(" ");
-            String head = words[1];
-            String other = words[3].split("\\.")[0];
-            String headHash = getShortCommitID(getCommitIDFromPtr(head), 7);
-            String otherHash = getShortCommitID(getCommitIDFromPtr(other), 7);
-            System.out.println("Merge: " + headHash + " " + otherHash);
+    public static void abortCheckout() {
+        if (!CheckoutJournal.exists()) {
+            System.out.println("No checkout in progress.");
+            return;
         }
-
-        System.out.println("Date: " + date + " -0800");
-        System.out.println(commit.getMessage());
-        System.out.println();
+        CheckoutJournal journal = CheckoutJournal.load();
+        int touched = Math.min(journal.size(), CheckoutJournal.progress() + CheckoutJournal.BATCH);
+        for (int i = 0; i < touched; i++) {
+            String name = journal.names.get(i);
+            File inCWD = Utils.join(CWD, name);
+            String hash = journal.oldBlobs.get(i);
+            if (hash != null) {
+                restoreBlob(hash, inCWD);
+            } else if (Utils.join(STAGING_DIR, name).exists()) { // it was a staged new file
+                copyPaste(Utils.join(STAGING_DIR, name), inCWD);
+            } else {
+                inCWD.delete();
+            }
+        }
+        for (Map.Entry<String, String> entry : journal.oldPointers.entrySet()) {
+            if (entry.getValue() == null) { // made by the switch, such as bisect
+                Storage.refs().remove(entry.getKey());
+            } else {
+                setPointer(entry.getKey(), entry.getValue());
+            }
+        }
+        CheckoutJournal.finish();
     }
 
     /**
-     * make log
+     * sparse-checkout set/disable: record PATTERNS (null to turn sparse checkout off),
+     * then bring CWD in line with the head commit: materialize tracked files that are
+     * now included, and delete unmodified ones that no longer are.
      */
-    public static void log() {
-        String currCommitHash = getCommitIDFromPtr("head");
+    public static void sparseCheckout(List<String> patterns) {
+        if (patterns == null) {
+            Sparse.disable();
+        } else {
+            try {
+                Sparse.set(patterns);
+            } catch (PatternSyntaxException e) { // nothing was recorded
+                System.out.println("Invalid pattern.");
+                return;
+            }
+        }
 
-        // start from HEAD, move back until initial commit and print messages along the way.
-        while (currCommitHash != null) {
-            Commit commit = getCommitFromID(currCommitHash);
-            logHelper(commit, currCommitHash);
-            currCommitHash = commit.getParent();
+        HashMap<String, String> trackedFiles = getTrackedFilesFromCommitPtr("head");
+        for (String key : trackedFiles.keySet()) {
+            File inCWD = Utils.join(CWD, key);
+            String hash = trackedFiles.get(key);
+            if (Sparse.includes(key)) {
+                if (!inCWD.exists()) {
+                    restoreBlob(hash, inCWD);
+                }
+            } else if (inCWD.exists() && getHashBySerializingFile(inCWD).equals(hash)) {
+                inCWD.delete();
+            }
         }
     }
 
     /**
-     * make global log of all commits
+     * alternates add: borrow missing objects from the repository at PATH.
      */
-    public static void logGlobal() {
-
-        List<String> allCommits = Utils.plainFilenamesIn(COMMIT_DIR); // commit area
-
-        for (String id : allCommits) {
-            Commit commit = getCommitFromID(id);
-            logHelper(commit, id);
+    public static void addAlternate(String path) {
+        requireLooseStorage();
+        File dir = Alternates.gitletDir(path);
+        if (dir == null) {
+            System.out.println("Not a Gitlet repository: " + path);
+            return;
+        }
+        if (dir.equals(GITLET_DIR.getAbsoluteFile())) {
+            System.out.println("A repository cannot be its own alternate.");
+            return;
         }
+        Alternates.add(dir);
     }
 
     /**
-     * Find all commits with given messagae
+     * alternates list: print the alternate object stores in lookup order.
      */
-    public static void find(String target) {
-        boolean found = false;
-        List<String> allCommits = Utils.plainFilenamesIn(COMMIT_DIR); // commit area
-
-        for (String id : allCommits) {
-            Commit commit = getCommitFromID(id);
-            String msg = commit.getMessage();
-
-            if (msg.equals(target)) {
-                System.out.println(id);
-                found = true;
-            }
-        }
-
-        if (!found) {
-            System.out.println("Found no commit with that message.");
+    public static void listAlternates() {
+        for (File dir : Alternates.list()) {
+            System.out.println(dir.getPath());
         }
     }
 
     /**
-     * status! what's the branch? what are staged, for removal, and changed?
+     * gc: delete commits, trees and blobs unreachable from every branch, as long as they
+     * are older than GRACEDAYS days, and report what was reclaimed.
      */
-    public static void status() {
-
-        List<String> allRemoval = Utils.plainFilenamesIn(REMOVAL_DIR);
-        List<String> allStaged = Utils.plainFilenamesIn(STAGING_DIR);
-        HashMap<String, String> p = getPointer();
-        ArrayList<String> allBranches = new ArrayList<>();
-        for (String branch : p.keySet()) {
-            if (!branch.equals("head")) {
-                allBranches.add(branch);
+    public static void gc(double graceDays) {
+        requireLooseStorage();
+        GarbageCollector collector = new GarbageCollector();
+        List<String> roots = new ArrayList<>();
+        for (Map.Entry<String, String> entry : getPointer().entrySet()) {
+            if (!entry.getKey().equals("head")) {
+                roots.add(entry.getValue());
             }
         }
-        Collections.sort(allBranches);
-
-        System.out.println("=== Branches ===");
-        String currBranch = getCurrentBranchName();
-        for (String branch : allBranches) {
-            if (branch.equals(currBranch)) {
-                System.out.print("*");
-            }
-            System.out.println(branch);
+        collector.mark(roots);
+        if (!collector.unresolved.isEmpty()) {
+            System.out.println("Cannot find a parent of merge commit "
+                    + collector.unresolved.iterator().next() + ", whose branch was deleted;"
+                    + " nothing was removed.");
+            return;
         }
-        System.out.println();
+        collector.sweep((long) (graceDays * 24 * 60 * 60 * 1000));
 
-        System.out.println("=== Staged Files ===");
-        if (allStaged.size() > 0) {
-            Collections.sort(allStaged);
-            for (String i : allStaged) {
-                System.out.println(i);
+        KnownObjects.rebuild(); // drop the removed blobs from the filter
+        if (collector.commitsRemoved > 0) {
+            Reachability.discard(); // its numbering still names the removed commits
+            if (MessageIndex.exists()) {
+                scanMessageIndex().save();
             }
         }
-        System.out.println();
-
-        System.out.println("=== Removed Files ===");
-        if (allRemoval.size() > 0) {
-            Collections.sort(allRemoval);
-            for (String i : allRemoval) {
-                System.out.println(i);
-            }
+        System.out.println("Removed " + collector.commitsRemoved + " commits, "
+                + collector.treesRemoved + " trees and " + collector.blobsRemoved + " blobs ("
+                + collector.bytesRemoved + " bytes).");
+        if (collector.chunksRemoved > 0) {
+            System.out.println("Removed " + collector.chunksRemoved + " unused chunks.");
+        }
+        if (collector.keptInGrace > 0) {
+            System.out.println("Kept " + collector.keptInGrace
+                    + " unreachable objects newer than the grace period.");
         }
-        System.out.println();
-
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        System.out.println();
-        System.out.println("=== Untracked Files === ");
-        System.out.println();
     }
 
+    /** Settings config may change. objectformat and storage are fixed by init, since
+     *  changing them would hide every stored object, and remotes have their own commands. */
+    private static final List<String> SETTABLE = Arrays.asList("chunking", "durability");
 
     /**
-     * Build branch. Simply create pointer -> current head commit
+     * config: print the setting KEY, or set it to VALUE if VALUE is not null.
      */
-    public static void branch(String name) {
-        HashMap<String, String> map = getPointer();
-        for (String key : map.keySet()) {
-            if (name.equals(key)) {
-                System.out.println("A branch with that name already exists.");
-                return;
-            }
+    public static void config(String key, String value) {
+        if (value != null && (key.equals("objectformat") || key.equals("storage"))) {
+            System.out.println("The " + key + " setting can only be chosen by init.");
+        } else if (value != null && !SETTABLE.contains(key)) {
+            System.out.println("No setting with that name can be changed.");
+        } else if (key.equals("durability") && value != null && !Durability.valid(value)) {
+            System.out.println("Durability must be none, batch or strict.");
+        } else if (key.equals("chunking") && value != null
+                && !value.equals("true") && !value.equals("false")) {
+            System.out.println("Chunking must be true or false.");
+        } else if (value != null) {
+            Config.set(key, value);
+        } else if (Config.get(key, null) != null) {
+            System.out.println(Config.get(key, null));
         }
-
-        String headCommit = getCommitIDFromPtr("head");
-        setPointer(name, headCommit);
     }
 
     /**
-     * Delete branch.
+     * add-remote: remember the repository at PATH under NAME.
      */
-    public static void removeBranch(String branch) {
-        if (branch.equals(getCurrentBranchName())) {
-            System.out.println("Cannot remove the current branch.");
+    public static void addRemote(String name, String path) {
+        if (Config.get("remote." + name, null) != null) {
+            System.out.println("A remote with that name already exists.");
             return;
         }
+        Config.set("remote." + name, path);
+    }
 
-        Pointer p = Utils.readObject(Utils.join(POINTER_DIR, "pointer"), Pointer.class);
-        for (String key : p.pointers.keySet()) {
-            if (key.equals(branch)) {
-                p.pointers.remove(key);
-                Utils.writeObject(Utils.join(POINTER_DIR, "pointer"), p);
-                System.exit(0);
-            }
+    /**
+     * rm-remote: forget the remote NAME.
+     */
+    public static void removeRemote(String name) {
+        if (Config.get("remote." + name, null) == null) {
+            System.out.println("A remote with that name does not exist.");
+            return;
         }
-
-        System.out.println("A branch with that name does not exist.");
+        Config.remove("remote." + name);
     }
 
     /**
-     * Merge alerts
+     * .gitlet directory of the remote NAME; exits if it is unknown or missing, or if
+     * it names its objects with a different hash algorithm.
      */
-    private static void mergeAlerts(String branch) {
-        List<String> stagingArea = Utils.plainFilenamesIn(STAGING_DIR);
-        List<String> removalArea = Utils.plainFilenamesIn(REMOVAL_DIR);
-        if (stagingArea.size() != 0 || removalArea.size() != 0) {
-            System.out.println("You have uncommitted changes.");
+    private static File remoteDir(String name) {
+        requireLooseStorage();
+        String path = Config.get("remote." + name, null);
+        File dir = path == null ? null : Alternates.gitletDir(path);
+        if (dir == null) {
+            System.out.println("Remote directory not found.");
             System.exit(0);
         }
-
-        HashMap<String, String> pointers = getPointer();
-        if (!pointers.containsKey(branch)) {
-            System.out.println("A branch with that name does not exist.");
+        if (!Config.read(dir, "objectformat", "sha1").equals(HashAlgorithm.current().formatName())) {
+            System.out.println("Remote uses a different object format.");
             System.exit(0);
         }
+        return dir;
+    }
 
-        if (getCurrentBranchName().equals(branch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+    /**
+     * push: send the current branch's history to BRANCH of the remote REMOTE. Only
+     * commits and blobs the remote lacks are copied.
+     */
+    public static void push(String remote, String branch) {
+        File dir = remoteDir(remote);
+        File remotePointerFile = Utils.join(dir, "pointers", "pointer");
+        Pointer remotePointer = Utils.readObject(remotePointerFile, Pointer.class);
+        String remoteTip = remotePointer.pointers.get(branch);
+        String headID = getCommitIDFromPtr("head");
+
+        if (remoteTip != null && !isAncestor(remoteTip, headID)) {
+            System.out.println("Please pull down remote changes before pushing.");
+            return;
         }
 
-        HashMap<String, String> oldTrackedFiles = getTrackedFilesFromCommitPtr("head");
-        HashMap<String, String> newTrackedFiles = getTrackedFilesFromCommitPtr(branch);
-
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+        ObjectTransfer transfer = new ObjectTransfer(GITLET_DIR, dir, true);
+        transfer.copyHistory(headID);
+        MessageIndex.recordAll(dir, transfer.commitsCopied);
 
-        // if untracked file exist:
-        if (cwdFiles.size() != 0) {
-            for (String f : cwdFiles) {
-
-                String oldCommitHash = oldTrackedFiles.get(f);
-                String targetCommitHash = newTrackedFiles.get(f);
-                String cwdHash = getHashBySerializingFile(Utils.join(CWD, f)); // never null
-
-                if (targetCommitHash != null) { // part of target commit
-                    if (oldCommitHash == null) { // not part of current commit
-                        if (!targetCommitHash.equals(cwdHash)) { // will overwrite
-                            if (!isTrackingInStaging(f)) { // not "tracked" in staging area
-                                System.out.println("There is an untracked file in the way;"
-                                        + " delete it, or add and commit it first.");
-                                System.exit(0);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        remotePointer.pointers.put(branch, headID); // objects are all in place first
+        Durability.writeRef(remotePointerFile, remotePointer);
     }
 
     /**
-     * Merge branch.
+     * fetch: copy the history of BRANCH in the remote REMOTE into this repository,
+     * as the branch REMOTE/BRANCH. Only commits and blobs this repository lacks are
+     * copied.
      */
-    public static void merge(String branch) {
-        mergeAlerts(branch); // first check errors!
-
-        String splitPoint = findSplitPointBFS(branch);
-
-        if (splitPoint.equals(getCommitIDFromPtr(branch))) {
-            System.out.println("Given branch is an ancestor of the current branch.");
-            System.exit(0);
-        }
-        if (splitPoint.equals(getCommitIDFromPtr("head"))) {
-            checkoutBranch(branch);
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+    public static void fetch(String remote, String branch) {
+        File dir = remoteDir(remote);
+        Pointer remotePointer = Utils.readObject(Utils.join(dir, "pointers", "pointer"),
+                Pointer.class);
+        String remoteTip = remotePointer.pointers.get(branch);
+        if (remoteTip == null || branch.equals("head")) {
+            System.out.println("That remote does not have that branch.");
+            return;
         }
 
-        HashMap<String, String> splitTrackedFiles = getCommitFromID(splitPoint).getTrackedFiles();
-        HashMap<String, String> headTrackedFiles = getTrackedFilesFromCommitPtr("head");
-        HashMap<String, String> branchTrackedFiles = getTrackedFilesFromCommitPtr(branch);
-
-        HashSet<String> allFiles = new HashSet<>();
-        allFiles.addAll(splitTrackedFiles.keySet());
-        allFiles.addAll(headTrackedFiles.keySet());
-        allFiles.addAll(branchTrackedFiles.keySet());
-
-        boolean conflicted = false;
-        for (String f : allFiles) {
-
-            // get files from split point, branch, and head. Null if DNE.
-            File fileAtSplit = null;
-            File fileAtHead = null;
-            File fileAtBranch = null;
-            if (splitTrackedFiles.get(f) != null) {
-                fileAtSplit = Utils.join(BLOB_DIR, splitTrackedFiles.get(f));
-            }
-            if (headTrackedFiles.get(f) != null) {
-                fileAtHead = Utils.join(BLOB_DIR, headTrackedFiles.get(f));
-            }
-            if (branchTrackedFiles.get(f) != null) {
-                fileAtBranch = Utils.join(BLOB_DIR, branchTrackedFiles.get(f));
-            }
-
-            // wraps several conditions into one helper method
-            if (mergeConditionHelper(fileAtSplit, fileAtHead, fileAtBranch, f)) {
-                continue;
-            }
-
-            // deal with conflict!
-            if (fileAtSplit != null
-                    && !compareFileToFile(fileAtHead, fileAtSplit)
-                    && !compareFileToFile(fileAtBranch, fileAtSplit)
-                    && !compareFileToFile(fileAtHead, fileAtBranch)) { // conflict!
-                String contentAtHead, contentAtBranch;
-                if (fileAtHead == null) {
-                    contentAtHead = "";
-                } else {
-                    contentAtHead = readContentsAsString(fileAtHead);
-                }
-                if (fileAtBranch == null) {
-                    contentAtBranch = "";
-                } else {
-                    contentAtBranch = readContentsAsString(fileAtBranch);
-                }
-
-                String toSave = "<<<<<<< HEAD\n";
-                toSave += contentAtHead;
-                toSave += "=======\n";
-                toSave += contentAtBranch;
-                toSave += ">>>>>>>\n";
-                Utils.writeContents(Utils.join(CWD, f), toSave);
-                add(f);
-                conflicted = true;
-            }
-        }
+        ObjectTransfer transfer = new ObjectTransfer(dir, GITLET_DIR, true);
+        transfer.copyHistory(remoteTip);
+        MessageIndex.recordAll(GITLET_DIR, transfer.commitsCopied);
 
-        commit("Merged " + branch + " into " + getCurrentBranchName() + ".");
+        setPointer(remote + "/" + branch, remoteTip);
+    }
 
-        if (conflicted) {
-            System.out.println("Encountered a merge conflict.");
+    /**
+     * pull: fetch BRANCH from REMOTE, then merge it into the current branch.
+     */
+    public static void pull(String remote, String branch) {
+        fetch(remote, branch);
+        if (getPointer().containsKey(remote + "/" + branch)) {
+            merge(remote + "/" + branch);
         }
     }
 
     /**
-     * handle different conditions 
+     * clone: create a repository in CWD holding the history of every branch of the
+     * repository at PATH, remembered as the remote "origin", and check out its current
+     * branch. A SHARED clone copies only commits and borrows blobs from PATH as an
+     * alternate, fetching each one the first time it is needed.
      */
-    private static boolean mergeConditionHelper(File fileAtSplit,
-                                        File fileAtHead, File fileAtBranch, String f) {
-
-        // splitPoint file exists
-        if (fileAtSplit != null && fileAtHead != null && fileAtBranch != null
-                && compareFileToFile(fileAtHead, fileAtSplit)
-                && !compareFileToFile(fileAtBranch, fileAtSplit)) {
-            copyPaste(fileAtBranch, join(CWD, f));
-            add(f);
-            return true;
-        }
-        if (fileAtSplit != null
-                && !compareFileToFile(fileAtHead, fileAtSplit)
-                && compareFileToFile(fileAtBranch, fileAtSplit)) {
-            return true;
-        }
-        if (fileAtSplit != null
-                && !compareFileToFile(fileAtHead, fileAtSplit)
-                && !compareFileToFile(fileAtBranch, fileAtSplit)
-                && compareFileToFile(fileAtHead, fileAtBranch)) { // both modified in same way
-            return true;
+    public static void cloneRepo(String path, boolean shared) {
+        if (GITLET_DIR.exists()) {
+            System.out.println("A Gitlet version-control system "
+                    + "already exists in the current directory.");
+            return;
         }
-        if (fileAtSplit != null
-                && compareFileToFile(fileAtSplit, fileAtHead)
-                && fileAtBranch == null) {
-            rm(f);
-            return true;
+        File source = Alternates.gitletDir(path);
+        if (source == null) {
+            System.out.println("Remote directory not found.");
+            return;
         }
-        if (fileAtSplit != null
-                && fileAtHead == null
-                && compareFileToFile(fileAtSplit, fileAtBranch)) {
-            return true;
+        Pointer sourcePointer = Utils.readObject(Utils.join(source, "pointers", "pointer"),
+                Pointer.class);
+        String sourceHead = sourcePointer.pointers.get(sourcePointer.pointers.get("head"));
+
+        GITLET_DIR.mkdir();
+        COMMIT_DIR.mkdir();
+        STAGING_DIR.mkdir();
+        REMOVAL_DIR.mkdir();
+        BLOB_DIR.mkdir();
+        TREE_DIR.mkdir();
+        POINTER_DIR.mkdir();
+        Config.set("objectformat", Config.read(source, "objectformat", "sha1"));
+        Config.set("remote.origin", source.getPath());
+        Storage.create(Storage.LOOSE);
+        if (shared) {
+            Alternates.add(source);
         }
 
-        // split is null
-        if (fileAtSplit == null && fileAtHead == null && fileAtBranch != null) {
-            copyPaste(fileAtBranch, join(CWD, f));
-            add(f);
-            return true;
+        ObjectTransfer transfer = new ObjectTransfer(source, GITLET_DIR, !shared);
+        for (Map.Entry<String, String> entry : sourcePointer.pointers.entrySet()) {
+            if (!entry.getKey().equals("head")) {
+                transfer.copyHistory(entry.getValue());
+            }
         }
-        if (fileAtSplit == null && fileAtHead != null && fileAtBranch == null) {
-            return true;
+        MessageIndex index = new MessageIndex();
+        for (Map.Entry<String, String> entry : transfer.commitsCopied.entrySet()) {
+            index.add(entry.getKey(), entry.getValue());
+        }
+        index.save();
+        for (Map.Entry<String, String> entry : sourcePointer.pointers.entrySet()) {
+            setPointer(entry.getKey(), entry.getValue());
         }
 
-        return false;
+        HashMap<String, String> trackedFiles = readCommit(sourceHead).getTrackedFiles();
+        for (String key : trackedFiles.keySet()) {
+            restoreBlob(trackedFiles.get(key), Utils.join(CWD, key));
+        }
     }
 
     /**
-     * Find latest split point for (head, branch).
+     * sparse-checkout list: print the patterns in use.
      */
-    private static String findSplitPointBFS(String branch) {
-
-        ArrayList<String> listA = doBFS("head");
-        ArrayList<String> listB = doBFS(branch);
-
-        for (String i : listA) {
-            if (listB.contains(i)) {
-                return i;
-            }
+    public static void sparseList() {
+        for (String pattern : Sparse.patterns()) {
+            System.out.println(pattern);
+        }
+    }
+
+    /**
+     * Basically do checkout-branch on a commit. Update all files and pointers.
+     */
+    public static void reset(String commitID) {
+        if (!hasCommit(commitID)) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+
+        Commit commit = getCommitFromID(commitID);
+        HashMap<String, String> newTrackedFiles = commit.getTrackedFiles();
+
+        // move both branch and head pointer back. // TODO? or not?
+        checkoutBranchHelper(newTrackedFiles,
+                getCurrentBranchName(), commitID, "head", getCurrentBranchName());
+//        setPointer("head", commitID);
+    }
+
+
+    /** Date format used by log; DateTimeFormatter is immutable and thread-safe. */
+    private static final DateTimeFormatter LOG_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd hh:mm:ss yyyy", Locale.US)
+                    .withZone(ZoneId.of("America/Los_Angeles"));
+
+    /**
+     * Buffered writer over stdout for commands that print many lines. Caller must flush.
+     */
+    private static PrintWriter bufferedStdout() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+    }
+
+    /**
+     * log helper: print!
+     */
+    public static void logHelper(PrintWriter out, Commit commit, String currCommitHash,
+                                 String format) {
+        if (format.equals("oneline")) {
+            out.println(currCommitHash + " " + commit.getMessage());
+            return;
+        }
+
+        String date = LOG_DATE_FORMAT.format(commit.getTimeStamp().toInstant());
+
+        out.println("===");
+        out.println("commit " + currCommitHash);
+
+        if (hasTwoParents(commit)) {
+            ArrayList<String> bothParents = getBothParents(commit);
+            String headHash = getShortCommitID(bothParents.get(0), 7);
+            String otherHash = getShortCommitID(bothParents.get(1), 7);
+            out.println("Merge: " + headHash + " " + otherHash);
+        }
+
+        out.println("Date: " + date + " -0800");
+        out.println(commit.getMessage());
+        out.println();
+    }
+
+    /**
+     * make log
+     */
+    public static void log() {
+        log(new LogOptions());
+    }
+
+    /**
+     * make log, honoring -n, --since and --format. The walk is lazy: it stops as soon
+     * as the limit is reached or the first-parent chain gets older than --since.
+     */
+    public static void log(LogOptions opts) {
+        PrintWriter out = bufferedStdout();
+        String currCommitHash = getCommitIDFromPtr("head");
+        int printed = 0;
+
+        // start from HEAD, move back until initial commit and print messages along the way.
+        while (currCommitHash != null && !opts.done(printed)) {
+            Commit commit = readCommit(currCommitHash);
+            if (opts.tooOld(commit.getTimeStamp())) {
+                break; // parents are never newer than their children
+            }
+            if (opts.path == null || changesPath(commit, opts.path)) {
+                logHelper(out, commit, currCommitHash, opts.format);
+                printed += 1;
+            }
+            currCommitHash = commit.getParent();
+        }
+        out.flush();
+    }
+
+    /**
+     * Did COMMIT change PATH relative to its first parent? The commit's changed-path
+     * filter answers most commits without loading either file table.
+     */
+    private static boolean changesPath(Commit commit, String path) {
+        if (!ChangedPaths.mightContain(commit.getChangedPaths(), path)) {
+            Trace.hit("changedPaths");
+            return false;
+        }
+        String before = commit.getParent() == null ? null
+            : readCommit(commit.getParent()).getTrackedFiles().get(path);
+        String after = commit.getTrackedFiles().get(path);
+        return after == null ? before != null : !after.equals(before);
+    }
+
+    /**
+     * make global log of all commits
+     */
+    public static void logGlobal() {
+        logGlobal(new LogOptions());
+    }
+
+    /**
+     * make global log of all commits, honoring -n, --since and --format.
+     */
+    public static void logGlobal(LogOptions opts) {
+        PrintWriter out = bufferedStdout();
+        List<String> allCommits = Storage.objects().list(ObjectStore.COMMITS); // commit area
+
+        if (opts.limit < 0) { // everything is read anyway: deserialize and format in parallel
+            CommitScanner.forEachOrdered(Storage.objects(), allCommits, (id, commit) -> {
+                if (opts.tooOld(commit.getTimeStamp())) {
+                    return null;
+                }
+                StringWriter entry = new StringWriter();
+                logHelper(new PrintWriter(entry), commit, id, opts.format);
+                return entry.toString();
+            }, out::print);
+            out.flush();
+            return;
+        }
+
+        int printed = 0;
+        for (String id : allCommits) {
+            if (opts.done(printed)) {
+                break;
+            }
+            Commit commit = readCommit(id);
+            if (opts.tooOld(commit.getTimeStamp())) {
+                continue;
+            }
+            logHelper(out, commit, id, opts.format);
+            printed += 1;
+        }
+        out.flush();
+    }
+
+    /**
+     * Find all commits with given messagae
+     */
+    public static void find(String target) {
+        find("exact", target);
+    }
+
+    /**
+     * Find commits by message. MODE is "exact", "grep" (substring) or "word" (token).
+     */
+    public static void find(String mode, String target) {
+        if (mode.equals("regex")) {
+            findRegex(target);
+            return;
+        }
+        MessageIndex index = MessageIndex.exists() ? MessageIndex.load() : scanMessageIndex();
+        TreeSet<String> found;
+        if (mode.equals("grep")) {
+            found = index.substring(target);
+        } else if (mode.equals("word")) {
+            found = index.word(target);
+        } else {
+            found = index.exact(target);
+        }
+
+        if (found.isEmpty()) {
+            System.out.println("Found no commit with that message.");
+            return;
+        }
+        PrintWriter out = bufferedStdout();
+        for (String id : found) {
+            out.println(id);
+        }
+        out.flush();
+    }
+
+    /**
+     * Find commits whose message matches the regular expression REGEX, scanning
+     * every commit in parallel.
+     */
+    private static void findRegex(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            System.out.println("Invalid regular expression.");
+            return;
+        }
+        List<String> found = CommitScanner.scan(Storage.objects(),
+                Storage.objects().list(ObjectStore.COMMITS),
+                (id, commit) -> pattern.matcher(commit.getMessage()).find() ? id : null);
+
+        if (found.isEmpty()) {
+            System.out.println("Found no commit with that message.");
+            return;
+        }
+        PrintWriter out = bufferedStdout();
+        for (String id : found) {
+            out.println(id);
+        }
+        out.flush();
+    }
+
+    /**
+     * Rebuild the message index from every commit.
+     */
+    public static void rebuildIndex() {
+        MessageIndex index = scanMessageIndex();
+        index.save();
+        System.out.println("Indexed " + index.size() + " commits.");
+    }
+
+    /**
+     * Check the message index against every commit and report any difference.
+     */
+    public static void checkIndex() {
+        if (!MessageIndex.exists()) {
+            System.out.println("No message index; run index rebuild.");
+            return;
+        }
+        MessageIndex index = MessageIndex.load();
+        TreeSet<String> indexed = index.allIds();
+        List<String> allCommits = Storage.objects().list(ObjectStore.COMMITS);
+
+        int problems = 0;
+        for (String id : allCommits) {
+            if (!index.exact(readCommit(id).getMessage()).contains(id)) {
+                System.out.println("Missing from index: " + id);
+                problems += 1;
+            }
+        }
+        indexed.removeAll(allCommits);
+        for (String id : indexed) {
+            System.out.println("Not in repository: " + id);
+            problems += 1;
+        }
+
+        if (problems == 0) {
+            System.out.println("Index is consistent with " + allCommits.size() + " commits.");
+        }
+    }
+
+    /**
+     * Build a message index by reading every commit.
+     */
+    private static MessageIndex scanMessageIndex() {
+        MessageIndex index = new MessageIndex();
+        List<String[]> messages = CommitScanner.scan(Storage.objects(),
+                Storage.objects().list(ObjectStore.COMMITS),
+                (id, commit) -> new String[] {id, commit.getMessage()});
+        for (String[] entry : messages) {
+            index.add(entry[0], entry[1]);
+        }
+        return index;
+    }
+
+    /**
+     * status! what's the branch? what are staged, for removal, and changed?
+     */
+    public static void status() {
+
+        List<String> allRemoval = Utils.plainFilenamesIn(REMOVAL_DIR);
+        List<String> allStaged = Utils.plainFilenamesIn(STAGING_DIR);
+        HashMap<String, String> p = getPointer();
+        ArrayList<String> allBranches = new ArrayList<>();
+        for (String branch : p.keySet()) {
+            if (!branch.equals("head")) {
+                allBranches.add(branch);
+            }
+        }
+        Collections.sort(allBranches);
+
+        System.out.println("=== Branches ===");
+        String currBranch = getCurrentBranchName();
+        for (String branch : allBranches) {
+            if (branch.equals(currBranch)) {
+                System.out.print("*");
+            }
+            System.out.println(branch);
+        }
+        System.out.println();
+
+        System.out.println("=== Staged Files ===");
+        if (allStaged.size() > 0) {
+            Collections.sort(allStaged);
+            for (String i : allStaged) {
+                System.out.println(i);
+            }
+        }
+        System.out.println();
+
+        System.out.println("=== Removed Files ===");
+        if (allRemoval.size() > 0) {
+            Collections.sort(allRemoval);
+            for (String i : allRemoval) {
+                System.out.println(i);
+            }
+        }
+        System.out.println();
+
+        HashMap<String, String> trackedFiles = getTrackedFilesFromCommitPtr("head");
+        HashMap<String, String> cwdFiles = WorkTree.snapshot();
+        TreeSet<String> modified = new TreeSet<>();
+        for (String f : allStaged) {
+            String cwdHash = cwdFiles.get(f);
+            if (cwdHash == null) {
+                modified.add(f + " (deleted)");
+            } else if (!cwdHash.equals(getHashBySerializingFile(Utils.join(STAGING_DIR, f)))) {
+                modified.add(f + " (modified)");
+            }
+        }
+        for (Map.Entry<String, String> entry : trackedFiles.entrySet()) {
+            String f = entry.getKey();
+            String cwdHash = cwdFiles.get(f);
+            if (allStaged.contains(f) || !Sparse.includes(f)) {
+                continue;
+            }
+            if (cwdHash == null && !allRemoval.contains(f)) {
+                modified.add(f + " (deleted)");
+            } else if (cwdHash != null && !cwdHash.equals(entry.getValue())) {
+                modified.add(f + " (modified)");
+            }
+        }
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String i : modified) {
+            System.out.println(i);
+        }
+        System.out.println();
+
+        TreeSet<String> untracked = new TreeSet<>();
+        for (String f : cwdFiles.keySet()) {
+            if (!allStaged.contains(f) && (!trackedFiles.containsKey(f) || allRemoval.contains(f))) {
+                untracked.add(f);
+            }
+        }
+        System.out.println("=== Untracked Files === ");
+        for (String i : untracked) {
+            System.out.println(i);
+        }
+        System.out.println();
+    }
+
+
+    /**
+     * diff: print a unified diff. With no commits, from the staging area to the working
+     * tree, or with CACHED from the head commit to the staging area; with FROM alone,
+     * from that commit to the working tree; with FROM and TO, between the two commits.
+     */
+    public static void diff(boolean cached, String from, String to) {
+        Diff.Side old, now;
+        if (from != null) {
+            Commit fromCommit = getCommitFromID(from);
+            Commit toCommit = to == null ? null : getCommitFromID(to);
+            if (fromCommit == null || (to != null && toCommit == null)) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            old = commitSide(fromCommit);
+            if (toCommit != null) {
+                now = commitSide(toCommit);
+            } else {
+                HashSet<String> names = new HashSet<>(old.hashes.keySet());
+                names.addAll(indexSide().hashes.keySet());
+                now = workingSide(names);
+            }
+        } else if (cached) {
+            old = commitSide(getCommitFromPtr("head"));
+            now = indexSide();
+        } else {
+            old = indexSide();
+            now = workingSide(old.hashes.keySet());
+        }
+        PrintWriter out = bufferedStdout();
+        Diff.print(out, old, now);
+        out.flush();
+    }
+
+    /**
+     * The files of COMMIT, as a side of a diff.
+     */
+    private static Diff.Side commitSide(Commit commit) {
+        HashMap<String, String> files = commit.getTrackedFiles();
+        return new Diff.Side(files, name -> readBlob(files.get(name)));
+    }
+
+    /**
+     * The files the next commit would track: the head commit's, minus those staged for
+     * removal, with staged versions in place of committed ones.
+     */
+    private static Diff.Side indexSide() {
+        HashMap<String, String> files = new HashMap<>(getTrackedFilesFromCommitPtr("head"));
+        for (String f : Utils.plainFilenamesIn(REMOVAL_DIR)) {
+            files.remove(f);
+        }
+        for (String f : Utils.plainFilenamesIn(STAGING_DIR)) {
+            files.put(f, getHashBySerializingFile(Utils.join(STAGING_DIR, f)));
+        }
+        return new Diff.Side(files, name -> Utils.join(STAGING_DIR, name).exists()
+            ? Utils.readContents(Utils.join(STAGING_DIR, name)) : readBlob(files.get(name)));
+    }
+
+    /**
+     * The working-tree versions of the files in NAMES that exist in CWD.
+     */
+    private static Diff.Side workingSide(Set<String> names) {
+        HashMap<String, String> files = new HashMap<>();
+        for (String f : names) {
+            File inCWD = Utils.join(CWD, f);
+            if (inCWD.isFile()) {
+                files.put(f, getHashBySerializingFile(inCWD));
+            }
+        }
+        return new Diff.Side(files, name -> Utils.readContents(Utils.join(CWD, name)));
+    }
+
+    /** Date format used by blame. */
+    private static final DateTimeFormatter BLAME_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.US)
+                    .withZone(ZoneId.of("America/Los_Angeles"));
+
+    /**
+     * blame: print each line of FILE in the head commit with the commit that introduced
+     * it. Only the versions newer than the latest cached one are diffed; commits whose
+     * changed-path filter rules FILE out are passed over without reading file tables.
+     */
+    public static void blame(String file) {
+        String id = getCommitIDFromPtr("head");
+        Commit commit = readCommit(id);
+        String blob = commit.getTrackedFiles().get(file);
+        if (blob == null) {
+            System.out.println("File does not exist in that commit.");
+            return;
+        }
+        String headBlob = blob;
+
+        // walk back to a cached version, noting each commit that made a new version
+        List<String[]> versions = new ArrayList<>(); // {commit, blob}, newest first
+        ObjectIdMap<ObjectId[]> parents = new ObjectIdMap<>();
+        Reachability reach = Reachability.load();
+        Blame origins = null;
+        while ((origins = cachedBlame(blob, id, reach, parents)) == null) {
+            String parentBlob = blob;
+            while (blob.equals(parentBlob)) {
+                if (commit.getParent() == null) {
+                    parentBlob = null;
+                    break;
+                }
+                Commit parent = readCommit(commit.getParent());
+                if (ChangedPaths.mightContain(commit.getChangedPaths(), file)) {
+                    parentBlob = parent.getTrackedFiles().get(file);
+                }
+                if (blob.equals(parentBlob)) {
+                    id = commit.getParent();
+                    commit = parent;
+                }
+            }
+            versions.add(new String[] {id, blob});
+            if (parentBlob == null) { // the file first appears here
+                break;
+            }
+            id = commit.getParent();
+            commit = readCommit(id);
+            blob = parentBlob;
+        }
+
+        // derive and cache the newer versions, oldest first
+        for (int i = versions.size() - 1; i >= 0; i--) {
+            String[] version = versions.get(i);
+            byte[] contents = readBlob(version[1]);
+            if (origins == null) {
+                origins = Blame.whole(version[0], Diff.lines(contents).size());
+            } else {
+                origins = origins.next(version[0], Diff.keptLines(readBlob(blob), contents));
+            }
+            origins.save(version[1]);
+            blob = version[1];
+        }
+        reach.save();
+
+        PrintWriter out = bufferedStdout();
+        List<String> lines = Diff.lines(readBlob(headBlob));
+        HashMap<String, Commit> commits = new HashMap<>();
+        String width = "%" + Integer.toString(lines.size()).length() + "d";
+        for (int i = 0; i < lines.size(); i++) {
+            String origin = origins.origin(i);
+            Commit c = commits.computeIfAbsent(origin, Repository::readCommit);
+            String line = lines.get(i);
+            out.println(getShortCommitID(origin, 8) + " ("
+                    + BLAME_DATE_FORMAT.format(c.getTimeStamp().toInstant()) + " "
+                    + String.format(width, i + 1) + ") "
+                    + (line.endsWith("\n") ? line.substring(0, line.length() - 1) : line));
+        }
+        out.flush();
+    }
+
+    /**
+     * The cached blame of BLOB, met in commit ID, or null if there is none or it names
+     * a commit that is not an ancestor of ID, as when it was cached from another branch.
+     */
+    private static Blame cachedBlame(String blob, String id, Reachability reach,
+                                     ObjectIdMap<ObjectId[]> parents) {
+        Blame cached = Blame.cached(blob);
+        Function<ObjectId, ObjectId[]> parentsOf = p -> parentsOf(p, parents);
+        if (cached == null
+                || !cached.within(reach.reach(ObjectId.fromHex(id), parentsOf), reach, parentsOf)) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Build branch. Simply create pointer -> current head commit
+     */
+    public static void branch(String name) {
+        HashMap<String, String> map = getPointer();
+        for (String key : map.keySet()) {
+            if (name.equals(key)) {
+                System.out.println("A branch with that name already exists.");
+                return;
+            }
+        }
+
+        String headCommit = getCommitIDFromPtr("head");
+        setPointer(name, headCommit);
+    }
+
+    /**
+     * Delete branch.
+     */
+    public static void removeBranch(String branch) {
+        if (branch.equals(getCurrentBranchName())) {
+            System.out.println("Cannot remove the current branch.");
+            return;
+        }
+
+        if (Storage.refs().get(branch) == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        Storage.refs().remove(branch);
+    }
+
+    /**
+     * Merge alerts
+     */
+    private static void mergeAlerts(String branch) {
+        List<String> stagingArea = Utils.plainFilenamesIn(STAGING_DIR);
+        List<String> removalArea = Utils.plainFilenamesIn(REMOVAL_DIR);
+        if (stagingArea.size() != 0 || removalArea.size() != 0) {
+            System.out.println("You have uncommitted changes.");
+            System.exit(0);
+        }
+
+        HashMap<String, String> pointers = getPointer();
+        if (!pointers.containsKey(branch)) {
+            System.out.println("A branch with that name does not exist.");
+            System.exit(0);
+        }
+
+        if (getCurrentBranchName().equals(branch)) {
+            System.out.println("Cannot merge a branch with itself.");
+            System.exit(0);
+        }
+
+        HashMap<String, String> oldTrackedFiles = getTrackedFilesFromCommitPtr("head");
+        HashMap<String, String> newTrackedFiles = getTrackedFilesFromCommitPtr(branch);
+        untrackedFileCheck(oldTrackedFiles, newTrackedFiles);
+    }
+
+    /**
+     * Merge branch.
+     */
+    public static void merge(String branch) {
+        mergeAlerts(branch); // first check errors!
+
+        if (isAncestor(getCommitIDFromPtr(branch), getCommitIDFromPtr("head"))) {
+            System.out.println("Given branch is an ancestor of the current branch.");
+            System.exit(0);
+        }
+        if (isAncestor(getCommitIDFromPtr("head"), getCommitIDFromPtr(branch))) {
+            // move the current branch (not head) up to the given branch
+            checkoutBranchHelper(getTrackedFilesFromCommitPtr(branch),
+                    getCurrentBranchName(), getCommitIDFromPtr(branch));
+            System.out.println("Current branch fast-forwarded.");
+            System.exit(0);
+        }
+
+        String splitPoint = findSplitPointBFS(branch);
+        TreeMerge result = TreeMerge.merge(getCommitFromID(splitPoint).getTrackedFiles(),
+                getTrackedFilesFromCommitPtr("head"), getTrackedFilesFromCommitPtr(branch),
+                Storage.objects());
+        if (result.changed.isEmpty()) {
+            System.out.println("No changes added to the commit.");
+            return;
+        }
+        String merged = commitTree("Merged " + branch + " into " + getCurrentBranchName() + ".",
+                getCommitIDFromPtr("head"), getCommitIDFromPtr(branch), result);
+        checkoutBranchHelper(result.result, getCurrentBranchName(), merged);
+
+        if (!result.conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /**
+     * cherry-pick: commit the changes COMMITID made to its first parent on top of HEAD,
+     * merged in memory. Conflicting files are committed with conflict markers, as
+     * merge does.
+     */
+    public static void cherryPick(String commitID) {
+        if (hasUncommittedChanges()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Commit picked = getCommitFromID(commitID);
+        if (picked == null) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        HashMap<String, String> before = picked.getParent() == null
+                ? new HashMap<>() : readCommit(picked.getParent()).getTrackedFiles();
+        TreeMerge result = TreeMerge.merge(before, getTrackedFilesFromCommitPtr("head"),
+                picked.getTrackedFiles(), Storage.objects());
+        if (result.changed.isEmpty()) {
+            System.out.println("No changes added to the commit.");
+            return;
+        }
+        String id = commitTree(picked.getMessage(), getCommitIDFromPtr("head"), null, result);
+        checkoutBranchHelper(result.result, getCurrentBranchName(), id);
+
+        if (!result.conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /**
+     * rebase: replay the commits of the current branch that BRANCH does not have on top
+     * of BRANCH, oldest first. Merge commits are dropped, as are commits whose changes
+     * BRANCH already has. Every replay is an in-memory merge; the working tree is
+     * updated once, to the final result. If any commit conflicts, nothing is changed.
+     */
+    public static void rebase(String branch) {
+        if (hasUncommittedChanges()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        String upstream = getCommitIDFromPtr(branch);
+        if (upstream == null || branch.equals("head")) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        if (branch.equals(getCurrentBranchName())) {
+            System.out.println("Cannot rebase a branch onto itself.");
+            return;
+        }
+        String headID = getCommitIDFromPtr("head");
+        if (isAncestor(upstream, headID)) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+        if (isAncestor(headID, upstream)) {
+            checkoutBranchHelper(getTrackedFilesFromCommitPtr(branch),
+                    getCurrentBranchName(), upstream);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+
+        // commits only the current branch has, parents before children
+        ObjectIdMap<ObjectId[]> parents = new ObjectIdMap<>();
+        Reachability reach = Reachability.load();
+        CompressedBitmap mine = reach.reach(ObjectId.fromHex(headID), id -> parentsOf(id, parents))
+                .andNot(reach.reach(ObjectId.fromHex(upstream), id -> parentsOf(id, parents)));
+        reach.save();
+        List<String> todo = new ArrayList<>();
+        mine.forEach(n -> todo.add(reach.idOf(n).toHex()));
+
+        // replay every commit in memory first; nothing is stored unless all apply cleanly
+        HashMap<String, String> tree = getTrackedFilesFromCommitPtr(branch);
+        List<String> messages = new ArrayList<>();
+        List<TreeMerge> replays = new ArrayList<>();
+        for (String id : todo) {
+            Commit commit = readCommit(id);
+            if (commit.getMergeParent() != null) {
+                continue;
+            }
+            HashMap<String, String> before = commit.getParent() == null
+                    ? new HashMap<>() : readCommit(commit.getParent()).getTrackedFiles();
+            TreeMerge result = TreeMerge.merge(before, tree, commit.getTrackedFiles(), null);
+            if (!result.conflicts.isEmpty()) {
+                System.out.println("Commit " + getShortCommitID(id, 8) + " conflicts with "
+                        + branch + " in " + result.conflicts.first() + "; nothing was rebased.");
+                return;
+            }
+            if (result.changed.isEmpty()) {
+                continue;
+            }
+            messages.add(commit.getMessage());
+            replays.add(result);
+            tree = result.result;
+        }
+
+        String base = upstream;
+        for (int i = 0; i < replays.size(); i++) {
+            base = commitTree(messages.get(i), base, null, replays.get(i));
+        }
+        checkoutBranchHelper(tree, getCurrentBranchName(), base);
+    }
+
+    /**
+     * Are there files in the staging or removal area?
+     */
+    private static boolean hasUncommittedChanges() {
+        return !Utils.plainFilenamesIn(STAGING_DIR).isEmpty()
+                || !Utils.plainFilenamesIn(REMOVAL_DIR).isEmpty();
+    }
+
+    /**
+     * Store a commit of the merged file table RESULT with MESSAGE, whose parent is
+     * PARENT and second parent MERGEPARENT (null for an ordinary commit), and return
+     * its id. Nothing is staged and no pointer moves.
+     */
+    private static String commitTree(String message, String parent, String mergeParent,
+                                     TreeMerge result) {
+        Commit commit = mergeParent == null
+                ? new Commit(message, parent) : new Commit(message, parent, mergeParent);
+        for (Map.Entry<String, String> entry : result.result.entrySet()) {
+            commit.trackNewFile(entry.getKey(), entry.getValue());
+        }
+        commit.setChangedPaths(ChangedPaths.filterOf(result.changed));
+        String id = storeCommit(commit);
+        MessageIndex.record(id, message);
+        return id;
+    }
+
+    /**
+     * Find latest split point for (head, branch).
+     */
+    private static String findSplitPointBFS(String branch) {
+        // both walks share one parent cache, so common history is read once
+        ObjectIdMap<ObjectId[]> parents = new ObjectIdMap<>();
+        List<ObjectId> listA = doBFS("head", parents);
+        List<ObjectId> listB = doBFS(branch, parents);
+
+        ObjectIdSet inB = new ObjectIdSet(listB.size());
+        for (ObjectId i : listB) {
+            inB.add(i);
+        }
+        for (ObjectId i : listA) {
+            if (inB.contains(i)) {
+                return i.toHex();
+            }
         }
 
         return null;
     }
 
+    /**
+     * Is commit ANCESTOR reachable from commit DESCENDANT (or the same commit)?
+     * Answered from the reachability bitmaps, which are extended as needed.
+     */
+    private static boolean isAncestor(String ancestor, String descendant) {
+        if (!hasCommit(ancestor)) {
+            return false;
+        }
+        ObjectIdMap<ObjectId[]> parents = new ObjectIdMap<>();
+        Reachability reach = Reachability.load();
+        boolean result = reach.isAncestor(ObjectId.fromHex(ancestor),
+                ObjectId.fromHex(descendant), id -> parentsOf(id, parents));
+        reach.save();
+        return result;
+    }
+
+    /**
+     * count-commits: print how many commits are reachable from BRANCH, leaving out
+     * those also reachable from EXCLUDED when it is not null.
+     */
+    public static void countCommits(String branch, String excluded) {
+        if (getCommitIDFromPtr(branch) == null
+                || (excluded != null && getCommitIDFromPtr(excluded) == null)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        ObjectIdMap<ObjectId[]> parents = new ObjectIdMap<>();
+        Reachability reach = Reachability.load();
+        CompressedBitmap commits = reach.reach(ObjectId.fromHex(getCommitIDFromPtr(branch)),
+                id -> parentsOf(id, parents));
+        if (excluded != null) {
+            commits = commits.andNot(reach.reach(ObjectId.fromHex(getCommitIDFromPtr(excluded)),
+                    id -> parentsOf(id, parents)));
+        }
+        reach.save();
+        System.out.println(commits.cardinality());
+    }
+
     /**
      * do BFS and store all parents in list
      */
-    private static ArrayList<String> doBFS(String branch) {
-        ArrayList<String> L = new ArrayList<>();
-        Queue<Commit> queue = new LinkedList<>();
-
-        L.add(getCommitIDFromPtr(branch));
-        queue.add(getCommitFromPtr(branch));
-
-        while (!queue.isEmpty()) {
-            Commit first = queue.remove();
-            if (hasTwoParents(first)) {
-                ArrayList<String> bothParents = getBothParents(first);
-                String a = bothParents.get(0);
-                String b = bothParents.get(1);
-                if (!L.contains(a)) {
-                    L.add(a);
-                    queue.add(getCommitFromID(a));
-                }
-                if (!L.contains(b)) {
-                    L.add(b);
-                    queue.add(getCommitFromID(b));
-                }
-            } else {
-                String p = first.getParent();
-                if (p != null && !L.contains(p)) {
+    static List<ObjectId> doBFS(String branch) {
+        return doBFS(branch, new ObjectIdMap<>());
+    }
+
+    /**
+     * do BFS and store all parents in list. PARENTS caches the parents of every
+     * commit read so far.
+     */
+    private static List<ObjectId> doBFS(String branch, ObjectIdMap<ObjectId[]> parents) {
+        ArrayList<ObjectId> L = new ArrayList<>();
+        ObjectIdSet seen = new ObjectIdSet();
+
+        ObjectId start = ObjectId.fromHex(getCommitIDFromPtr(branch));
+        L.add(start);
+        seen.add(start);
+
+        // L doubles as the queue: everything after index i is still to be expanded
+        for (int i = 0; i < L.size(); i++) {
+            for (ObjectId p : parentsOf(L.get(i), parents)) {
+                if (seen.add(p)) {
                     L.add(p);
-                    queue.add(getCommitFromID(p));
                 }
             }
         }
         return L;
     }
 
+    /**
+     * bisect start [BAD [GOOD...]]: begin a search for the commit that turned good
+     * history bad, optionally marking BAD and each of GOODS.
+     */
+    public static void bisectStart(String bad, List<String> goods) {
+        if (Bisect.exists()) {
+            System.out.println("A bisect is already in progress; run bisect reset first.");
+            return;
+        }
+        if (hasUncommittedChanges()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        if (getCommitIDFromPtr(Bisect.BRANCH) != null) {
+            System.out.println("A branch named " + Bisect.BRANCH + " already exists.");
+            return;
+        }
+        Bisect state = new Bisect(getCurrentBranchName());
+        List<String> marks = new ArrayList<>(goods);
+        if (bad != null) {
+            marks.add(0, bad);
+        }
+        for (int i = 0; i < marks.size(); i++) {
+            String id = revisionID(marks.get(i));
+            if (id == null) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            state.mark(id, bad == null || i > 0);
+        }
+        bisectStep(state);
+    }
+
+    /**
+     * bisect good|bad|skip [COMMITID]: record the verdict on COMMITID, by default the
+     * commit checked out, and check out the next candidate.
+     */
+    public static void bisectMark(String verdict, String commitID) {
+        if (!Bisect.exists()) {
+            System.out.println("No bisect in progress.");
+            return;
+        }
+        String id = revisionID(commitID == null ? "head" : commitID);
+        if (id == null) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        Bisect state = Bisect.load();
+        if (verdict.equals("skip")) {
+            state.skipped.add(id);
+        } else {
+            state.mark(id, verdict.equals("good"));
+        }
+        bisectStep(state);
+    }
+
+    /**
+     * bisect run COMMAND: mark each candidate by the exit code of COMMAND, run in CWD,
+     * until the first bad commit is found. 0 means good, 125 means the commit cannot be
+     * tested, any other code below 128 means bad, and anything else stops the search.
+     */
+    public static void bisectRun(List<String> command) {
+        if (!Bisect.exists()) {
+            System.out.println("No bisect in progress.");
+            return;
+        }
+        Bisect state = Bisect.load();
+        if (state.bad == null || state.good.isEmpty()) {
+            System.out.println("bisect run needs a good and a bad commit.");
+            return;
+        }
+        ObjectIdMap<ObjectId[]> parents = new ObjectIdMap<>();
+        Reachability reach = Reachability.load();
+        while (true) {
+            System.out.flush();
+            int code;
+            try {
+                code = new ProcessBuilder(command).directory(CWD).inheritIO().start().waitFor();
+            } catch (IOException | InterruptedException e) {
+                System.out.println("bisect run failed: " + e.getMessage());
+                return;
+            }
+            if (code >= 128 || code < 0) {
+                System.out.println("bisect run failed: exit code " + code);
+                return;
+            }
+            String current = getCommitIDFromPtr("head");
+            if (code == 125) {
+                state.skipped.add(current);
+            } else {
+                state.mark(current, code == 0);
+            }
+            if (bisectStep(state, reach, parents)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * bisect reset: end the search and check out the branch it started from.
+     */
+    public static void bisectReset() {
+        if (!Bisect.exists()) {
+            System.out.println("No bisect in progress.");
+            return;
+        }
+        Bisect state = Bisect.load();
+        if (!state.original.equals(getCurrentBranchName())) {
+            checkoutBranchHelper(getTrackedFilesFromCommitPtr(state.original),
+                    "head", state.original);
+        }
+        Storage.refs().remove(Bisect.BRANCH);
+        Bisect.finish();
+    }
+
+    /**
+     * Save STATE and check out the next candidate, or report the first bad commit.
+     * Returns true once the search is over.
+     */
+    private static boolean bisectStep(Bisect state) {
+        return bisectStep(state, Reachability.load(), new ObjectIdMap<>());
+    }
+
+    /**
+     * bisectStep using the reachability index REACH and the parent cache PARENTS,
+     * which bisect run keeps across steps.
+     */
+    private static boolean bisectStep(Bisect state, Reachability reach,
+                                      ObjectIdMap<ObjectId[]> parents) {
+        state.save();
+        if (state.bad == null || state.good.isEmpty()) {
+            System.out.println("Waiting for both good and bad commits.");
+            return false;
+        }
+        Function<ObjectId, ObjectId[]> parentsOf = id -> parentsOf(id, parents);
+        CompressedBitmap suspects = state.suspects(reach, parentsOf);
+        if (suspects.cardinality() == 0) {
+            reach.save();
+            System.out.println("The bad commit is an ancestor of a good commit.");
+            return true;
+        }
+        CompressedBitmap testable = state.testable(suspects, reach, parentsOf);
+        int[] next = Bisect.midpoint(suspects, testable, reach);
+        reach.save();
+
+        if (next[0] < 0 && suspects.cardinality() == 1) {
+            System.out.println(state.bad + " is the first bad commit");
+            PrintWriter out = bufferedStdout();
+            logHelper(out, readCommit(state.bad), state.bad, "medium");
+            out.flush();
+            return true;
+        }
+        if (next[0] < 0) {
+            System.out.println("There are only skipped commits left to test.");
+            System.out.println("The first bad commit could be any of:");
+            suspects.forEach(n -> System.out.println(reach.idOf(n).toHex()));
+            return true;
+        }
+
+        int left = next[1] - 1;
+        int steps = 31 - Integer.numberOfLeadingZeros(left + 1);
+        System.out.println("Bisecting: " + left + " revisions left to test after this (roughly "
+                + steps + " steps)");
+        String candidate = reach.idOf(next[0]).toHex();
+        checkoutBranchHelper(readCommit(candidate).getTrackedFiles(),
+                Bisect.BRANCH, candidate, "head", Bisect.BRANCH);
+        System.out.println("[" + candidate + "] " + readCommit(candidate).getMessage());
+        return false;
+    }
+
+    /**
+     * Commit id named by REVISION: a branch, "head", or a full or abbreviated commit id;
+     * null if it names nothing.
+     */
+    private static String revisionID(String revision) {
+        String id = getCommitIDFromPtr(revision);
+        return id != null ? id : getFullCommitID(revision);
+    }
+
+    /**
+     * Parents of commit ID, read from the object store unless already in CACHE.
+     */
+    private static ObjectId[] parentsOf(ObjectId id, ObjectIdMap<ObjectId[]> cache) {
+        ObjectId[] result = cache.get(id);
+        if (result == null) {
+            Commit commit = readCommit(id.toHex());
+            List<ObjectId> found = new ArrayList<>(2);
+            if (hasTwoParents(commit)) {
+                for (String p : getBothParents(commit)) {
+                    if (p != null) { // a deleted branch leaves nothing to follow
+                        found.add(ObjectId.fromHex(p));
+                    }
+                }
+            } else if (commit.getParent() != null) {
+                found.add(ObjectId.fromHex(commit.getParent()));
+            }
+            result = found.toArray(new ObjectId[0]);
+            cache.put(id, result);
+        }
+        return result;
+    }
+
     // ============================= HELPER METHODS ============================= //
 
     /**
      * Implement pointer HashMap that stores HEAD, MASTER, NEWBRANCH, etc.
      */
-    private static class Pointer implements Serializable {
+    static class Pointer implements Serializable {
         /** folder of all Pointers */
         HashMap<String, String> pointers;
         Pointer() {
@@ -780,42 +1838,34 @@ public class Repository {
      * Helper: get commit hashcode of HEAD, MASTER, etc from serialized pointers
      */
     private static HashMap<String, String> getPointer() {
-        File pointerDir = Utils.join(POINTER_DIR, "pointer");
-        return readObject(pointerDir, Pointer.class).pointers;
+        return Storage.refs().all();
     }
 
     /**
      * Set hashcode of commits that pointer point to. Head should point to branch name.
+     * Objects written so far reach the disk before the pointer does.
      */
     private static void setPointer(String branch, String hashcode) {
-
-        File pointerDir = Utils.join(POINTER_DIR, "pointer");
-        Pointer p = Utils.readObject(pointerDir, Pointer.class);
-
-        p.pointers.put(branch, hashcode); // if branch exist, overwrite
-        Utils.writeObject(Utils.join(POINTER_DIR, "pointer"), p);
+        Storage.refs().set(branch, hashcode); // if branch exist, overwrite
     }
 
     /**
      * What is the branch that coincide with HEAD?
      */
     private static String getCurrentBranchName() {
-        File pointerDir = Utils.join(POINTER_DIR, "pointer");
-        Pointer p = Utils.readObject(pointerDir, Pointer.class);
-        return p.pointers.get("head");
+        return Storage.refs().get("head");
     }
 
     /**
      * Helper: get commit hashcode of HEAD, MASTER, etc from serialized pointers
      */
-    private static String getCommitIDFromPtr(String ptr) {
-        File pointerDir = Utils.join(POINTER_DIR, "pointer");
-        Pointer p = Utils.readObject(pointerDir, Pointer.class);
+    static String getCommitIDFromPtr(String ptr) {
+        HashMap<String, String> p = getPointer();
         if (ptr.equals("head")) { // head is pointing at branch name (master, etc)!
-            String currBranch = p.pointers.get("head");
-            return p.pointers.get(currBranch);
+            String currBranch = p.get("head");
+            return p.get(currBranch);
         } else {
-            return p.pointers.get(ptr);
+            return p.get(ptr);
         }
     }
 
@@ -824,27 +1874,108 @@ public class Repository {
      */
     private static Commit getCommitFromPtr(String ptr) {
         String position = getCommitIDFromPtr(ptr);
-        return Utils.readObject(Utils.join(COMMIT_DIR, position), Commit.class);
+        return readCommit(position);
+    }
+
+    /**
+     * Exit unless this repository keeps its objects in the loose layout, which gc,
+     * alternates and the remote commands work on directly.
+     */
+    private static void requireLooseStorage() {
+        if (!Storage.loose()) {
+            System.out.println("That command needs loose object storage.");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Read the commit with the full id COMMITID directly, without listing every commit.
+     */
+    private static Commit readCommit(String commitID) {
+        return Storage.objects().readObject(ObjectStore.COMMITS, commitID, Commit.class);
+    }
+
+    /**
+     * Does the commit with the full id COMMITID exist?
+     */
+    private static boolean hasCommit(String commitID) {
+        return Storage.objects().has(ObjectStore.COMMITS, commitID);
+    }
+
+    /**
+     * Store COMMIT, its file table first, and return its id.
+     */
+    private static String storeCommit(Commit commit) {
+        commit.storeTree(Storage.objects());
+        byte[] serialized = Utils.serialize(commit);
+        String id = HashAlgorithm.current().hash(serialized);
+        Storage.objects().write(ObjectStore.COMMITS, id, serialized);
+        return id;
+    }
+
+    /**
+     * Store the file SOURCE as the blob HASH, unless it is already stored.
+     */
+    private static void storeBlob(File source, String hash) {
+        Storage.objects().writeFile(ObjectStore.BLOBS, hash, source);
+    }
+
+    /**
+     * Write the contents of blob HASH to DESTINATION, however the blob is stored.
+     */
+    private static void restoreBlob(String hash, File destination) {
+        Storage.objects().readFile(ObjectStore.BLOBS, hash, destination);
+    }
+
+    /**
+     * Contents of blob HASH, however it is stored.
+     */
+    private static byte[] readBlob(String hash) {
+        return Storage.objects().read(ObjectStore.BLOBS, hash);
     }
 
     /**
      * get commit from a commit hashcode (id). Need to handle short uid case.
      */
-    private static Commit getCommitFromID(String commitID) {
-        int L = 40;
-        if (commitID.length() < 40) { // short id!
-            L = commitID.length();
+    static Commit getCommitFromID(String commitID) {
+        String fullID = getFullCommitID(commitID);
+        return fullID == null ? null : readCommit(fullID);
+    }
+
+    /**
+     * Full id of the commit whose id is or starts with COMMITID; null if none. A prefix
+     * shared by several commits names none of them, so it is reported and we exit.
+     */
+    private static String getFullCommitID(String commitID) {
+        int fullLength = HashAlgorithm.current().hexLength();
+        if (commitID.length() == fullLength) { // full id: no need to scan the directory
+            return hasCommit(commitID) ? commitID : null;
+        }
+        if (commitID.length() > fullLength) {
+            return null;
         }
 
-        List<String> allCommits = Utils.plainFilenamesIn(COMMIT_DIR);
+        int L = commitID.length(); // short id!
+
+        TreeSet<String> matches = new TreeSet<>();
+        List<String> allCommits = Storage.objects().list(ObjectStore.COMMITS);
         for (String name : allCommits) {
             String shortID = getShortCommitID(name, L);
             if (commitID.equals(shortID)) {
-                return Utils.readObject(Utils.join(COMMIT_DIR, name), Commit.class);
+                matches.add(name);
             }
         }
+        matches.addAll(Alternates.namesStartingWith("commits", commitID));
 
-        return null;
+        if (matches.isEmpty()) {
+            return null;
+        }
+        if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id; " + matches.size() + " commits start with "
+                    + commitID + ".");
+            System.exit(0);
+        }
+        return matches.first();
     }
 
     /**
@@ -856,21 +1987,18 @@ public class Repository {
     }
 
     /**
-     * Get hashcode of a commit
+     * Get hashcode of a file (to be committed)
      */
-    private static String getHashBySerializingCommit(Serializable f) {
-        byte[] serialized = Utils.serialize(f);
-        String hashcode = Utils.sha1(serialized);
-        return hashcode;
+    private static String getHashBySerializingFile(File f) {
+        return MappedObjects.hash(f, isObjectFile(f));
     }
 
     /**
-     * Get hashcode of a file (to be committed)
+     * Is F a blob or commit? Those never change once written.
      */
-    private static String getHashBySerializingFile(File f) {
-        byte[] serialized = Utils.readContents(f);
-        String hashcode = Utils.sha1(serialized);
-        return hashcode;
+    private static boolean isObjectFile(File f) {
+        File dir = f.getParentFile();
+        return BLOB_DIR.equals(dir) || COMMIT_DIR.equals(dir);
     }
 
     /**
@@ -883,18 +2011,12 @@ public class Repository {
     /**
      * Copy and paste files from origin to destination.
      */
-    private static void copyPaste(File origin, File destination) {
+    static void copyPaste(File origin, File destination) {
+        long start = Trace.start();
         try {
-            InputStream in = new BufferedInputStream(new FileInputStream(origin));
-            OutputStream out = new BufferedOutputStream(new FileOutputStream(destination));
-
-            byte[] buffer = new byte[1024];
-            int lengthRead;
-            while ((lengthRead = in.read(buffer)) > 0) {
-                out.write(buffer, 0, lengthRead);
-                out.flush();
-            }
-        } catch (IOException e) {
+            long copied = MappedObjects.copy(origin, destination, isObjectFile(origin));
+            Trace.end("copyPaste", start, copied);
+        } catch (IllegalArgumentException e) {
             System.out.println("I/O copy error occurred.");
             e.printStackTrace();
         }
@@ -912,29 +2034,16 @@ public class Repository {
         }
     }
 
-    /**
-     * Compare if two files are different. null==null.
-     */
-    private static boolean compareFileToFile(File a, File b) {
-        if (a == null && b == null) {
-            return true;
-        }
-
-        if ((a == null && b != null) || (a != null && b == null)) {
-            return false;
-        }
-
-        String hashA = getHashBySerializingFile(a);
-        String hashB = getHashBySerializingFile(b);
-        return hashA.equals(hashB);
-    }
-
     /**
      * get both parent hash from commit
      */
-    private static ArrayList<String> getBothParents(Commit commit) {
+    static ArrayList<String> getBothParents(Commit commit) {
         ArrayList<String> L = new ArrayList<>();
-        if (hasTwoParents(commit)) {
+        if (commit.getMergeParent() != null) {
+            L.add(commit.getParent());
+            L.add(commit.getMergeParent());
+        } else if (hasTwoParents(commit) && commit.getMessage().split(" ").length >= 4) {
+            // older merges only name their branches, as "Merged A into B."
             String message = commit.getMessage();
             String[] words = message.split(" ");
             String one = words[1]; // head
@@ -950,9 +2059,9 @@ public class Repository {
     /**
      * check if commit has two parents
      */
-    private static boolean hasTwoParents(Commit commit) {
+    static boolean hasTwoParents(Commit commit) {
         String message = commit.getMessage();
-        return (message.contains("Merged "));
+        return commit.getMergeParent() != null || message.contains("Merged ");
     }
 
 }
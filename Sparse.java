@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Sparse-checkout patterns, stored one glob per line in .gitlet/sparse.
+ *  While the file exists, checkout, reset and merge only write, delete or
+ *  check working-tree files whose names match one of the patterns; every
+ *  other tracked file stays in the commits but is never materialized.
+ *  @author Yang Lyu
+ */
+class Sparse {
+
+    /** The pattern file; absent when sparse checkout is off. */
+    static final File SPARSE_FILE = Utils.join(Repository.GITLET_DIR, "sparse");
+
+    /** Matchers for the current patterns; null until first use. */
+    private static List<PathMatcher> matchers;
+
+    /** Is sparse checkout on? */
+    static boolean enabled() {
+        return SPARSE_FILE.isFile();
+    }
+
+    /** The current patterns, in the order given. */
+    static List<String> patterns() {
+        List<String> result = new ArrayList<>();
+        if (enabled()) {
+            for (String line : Utils.readContentsAsString(SPARSE_FILE).split("\n")) {
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Replace the patterns with PATTERNS, turning sparse checkout on. Throws
+     *  PatternSyntaxException, changing nothing, if one is not a valid glob. */
+    static void set(List<String> patterns) {
+        StringBuilder contents = new StringBuilder();
+        for (String pattern : patterns) {
+            FileSystems.getDefault().getPathMatcher("glob:" + pattern); // reject bad globs now
+            contents.append(pattern).append("\n");
+        }
+        Utils.writeContents(SPARSE_FILE, contents.toString());
+        matchers = null;
+    }
+
+    /** Turn sparse checkout off. */
+    static void disable() {
+        SPARSE_FILE.delete();
+        matchers = null;
+    }
+
+    /** Should the tracked file NAME be present in the working directory? */
+    static boolean includes(String name) {
+        if (matchers == null) {
+            if (!enabled()) {
+                return true;
+            }
+            matchers = new ArrayList<>();
+            for (String pattern : patterns()) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+        }
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(Paths.get(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
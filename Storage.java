@@ -0,0 +1,72 @@
+package gitlet;
+
+/** The storage backend of this repository, chosen at init with --storage and
+ *  recorded in config:
+ *      loose   one file per object and a serialized ref map (LooseStore, the default)
+ *      log     a single append-only log with a hash index (LogStore)
+ *      memory  the heap of the running process (MemoryStore); only benchmarks and
+ *              tests, which create and use a repository within one process, pick it
+ *  @author Yang Lyu
+ */
+class Storage {
+
+    /** The backends. */
+    static final String LOOSE = "loose", LOG = "log", MEMORY = "memory";
+
+    /** The open object and ref stores; null until first use. */
+    private static ObjectStore objects;
+    private static RefStore refs;
+
+    /** Is BACKEND the name of a backend? */
+    static boolean valid(String backend) {
+        return LOOSE.equals(backend) || LOG.equals(backend) || MEMORY.equals(backend);
+    }
+
+    /** Record BACKEND as the backend of a new repository and open it. */
+    static void create(String backend) {
+        Config.set("storage", backend);
+        objects = null;
+        refs = null;
+        open();
+    }
+
+    /** The object store of this repository. */
+    static ObjectStore objects() {
+        if (objects == null) {
+            open();
+        }
+        return objects;
+    }
+
+    /** The ref store of this repository. */
+    static RefStore refs() {
+        if (refs == null) {
+            open();
+        }
+        return refs;
+    }
+
+    /** Does this repository use the loose layout, which the commands that work on
+     *  object directories (gc, alternates, push, fetch, clone) need? */
+    static boolean loose() {
+        return objects() instanceof LooseStore;
+    }
+
+    /** Open the backend named in config. */
+    private static void open() {
+        String backend = Config.get("storage", LOOSE);
+        if (backend.equals(LOG)) {
+            LogStore store = new LogStore(Utils.join(Repository.GITLET_DIR, "store"));
+            objects = store;
+            refs = store;
+        } else if (backend.equals(MEMORY)) {
+            MemoryStore store = new MemoryStore();
+            objects = store;
+            refs = store;
+        } else {
+            LooseStore store = new LooseStore();
+            objects = store;
+            refs = store;
+        }
+    }
+}
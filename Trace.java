@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Operation tracing for diagnosing slow commands.
+ *  Enabled by a leading --trace or --trace=json argument, or by setting the
+ *  GITLET_TRACE environment variable to "summary" or "json". Instrumented
+ *  operations call start() and end(); while tracing is off both reduce to a
+ *  single boolean test.
+ *
+ *  summary: when the command exits, a table of calls, bytes, wall time and
+ *           cache hits per operation is printed to stderr.
+ *  json:    every call is also recorded as a Chrome trace event and written to
+ *           GITLET_TRACE_FILE (default .gitlet/trace.json), which can be loaded
+ *           into chrome://tracing or Perfetto.
+ *  @author Yang Lyu
+ */
+class Trace {
+
+    /** Per-operation counters: calls, bytes, nanoseconds, cache hits. */
+    private static final int CALLS = 0, BYTES = 1, NANOS = 2, HITS = 3;
+
+    /** Is tracing on? Read on every instrumented call, so kept a plain static. */
+    private static boolean enabled = false;
+    /** Record individual events for the Chrome trace? */
+    private static boolean events = false;
+    /** The command being traced. */
+    private static String command = "";
+    /** Counters for each operation, sorted by name. */
+    private static final Map<String, long[]> STATS = new TreeMap<>();
+    /** Chrome trace events, as JSON objects. */
+    private static final List<String> EVENTS = new ArrayList<>();
+    /** Time origin of the trace. */
+    private static final long ORIGIN = System.nanoTime();
+
+    /** Turn tracing on according to GITLET_TRACE or a leading --trace or
+     *  --trace=json in ARGS, and return ARGS without that flag. Any other flag
+     *  starting with --trace is rejected. */
+    static String[] configure(String[] args) {
+        String mode = System.getenv("GITLET_TRACE");
+        if (args.length > 0 && args[0].startsWith("--trace")) {
+            if (args[0].equals("--trace")) {
+                mode = "summary";
+            } else if (args[0].equals("--trace=json")) {
+                mode = "json";
+            } else {
+                System.out.println("Incorrect operands.");
+                System.exit(0);
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (mode != null && !mode.isEmpty() && !mode.equals("0")) {
+            enabled = true;
+            events = mode.equals("json");
+            command = String.join(" ", args);
+            Runtime.getRuntime().addShutdownHook(new Thread(Trace::report));
+        }
+        return args;
+    }
+
+    /** Start timing an operation. */
+    static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /** Finish timing operation OP begun at START, which moved BYTES bytes. */
+    static void end(String op, long start, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (STATS) {
+            long[] stat = STATS.computeIfAbsent(op, k -> new long[4]);
+            stat[CALLS] += 1;
+            stat[BYTES] += bytes;
+            stat[NANOS] += now - start;
+            if (events) {
+                EVENTS.add(String.format("{\"name\": \"%s\", \"ph\": \"X\", \"ts\": %.3f, "
+                        + "\"dur\": %.3f, \"pid\": 1, \"tid\": %d, \"args\": {\"bytes\": %d}}",
+                        op, (start - ORIGIN) / 1e3, (now - start) / 1e3,
+                        Thread.currentThread().getId(), bytes));
+            }
+        }
+    }
+
+    /** Count a cache hit for operation OP. */
+    static void hit(String op) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (STATS) {
+            STATS.computeIfAbsent(op, k -> new long[4])[HITS] += 1;
+        }
+    }
+
+    /** Print the summary table, and write the Chrome trace if requested. */
+    private static void report() {
+        long total = System.nanoTime() - ORIGIN;
+        synchronized (STATS) {
+            System.out.flush();
+            System.err.printf("trace: %s (%.2f ms)%n", command, total / 1e6);
+            System.err.printf("%-20s %10s %14s %12s %10s%n",
+                    "operation", "calls", "bytes", "time (ms)", "hits");
+            for (Map.Entry<String, long[]> entry : STATS.entrySet()) {
+                long[] stat = entry.getValue();
+                System.err.printf("%-20s %10d %14d %12.2f %10d%n", entry.getKey(),
+                        stat[CALLS], stat[BYTES], stat[NANOS] / 1e6, stat[HITS]);
+            }
+            if (events) {
+                writeEvents();
+            }
+        }
+    }
+
+    /** Write the recorded events as a Chrome trace file. */
+    private static void writeEvents() {
+        String path = System.getenv("GITLET_TRACE_FILE");
+        File out = path != null ? new File(path) : Utils.join(Repository.GITLET_DIR, "trace.json");
+        if (path == null && !Repository.GITLET_DIR.isDirectory()) {
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"traceEvents\": [\n");
+        for (int i = 0; i < EVENTS.size(); i++) {
+            json.append(EVENTS.get(i)).append(i + 1 < EVENTS.size() ? ",\n" : "\n");
+        }
+        json.append("]}\n");
+        Utils.writeContents(out, json.toString());
+        System.err.println("trace written to " + out.getPath());
+    }
+}
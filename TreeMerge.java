@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Three-way merge of file tables, done entirely in memory.
+ *  Given the tables of the split point, HEAD and the other side, each file
+ *  keeps HEAD's version unless only the other side changed it, in which case
+ *  it takes that side's version. A file both sides changed differently becomes
+ *  a new blob holding both versions between conflict markers. Only conflict
+ *  blobs are written; merge, cherry-pick and rebase turn the result straight
+ *  into a commit and touch the working tree once, at the end.
+ *  @author Yang Lyu
+ */
+class TreeMerge {
+
+    /** The merged file table, name -> blob id. */
+    final HashMap<String, String> result;
+    /** Files whose merged version differs from HEAD's. */
+    final List<String> changed = new ArrayList<>();
+    /** Files left with conflict markers, in order. */
+    final TreeSet<String> conflicts = new TreeSet<>();
+
+    private TreeMerge(Map<String, String> head) {
+        this.result = new HashMap<>(head);
+    }
+
+    /** Merge the changes from SPLIT to OTHER into HEAD, writing any conflict
+     *  blobs to STORE. With a null STORE nothing is written, and a conflicted
+     *  file keeps HEAD's version; only CONFLICTS tells of it. */
+    static TreeMerge merge(Map<String, String> split, Map<String, String> head,
+                           Map<String, String> other, ObjectStore store) {
+        TreeMerge merge = new TreeMerge(head);
+        Set<String> names = new HashSet<>(split.keySet());
+        names.addAll(other.keySet());
+        for (String name : names) {
+            String atSplit = split.get(name);
+            String atOther = other.get(name);
+            String atHead = head.get(name);
+            if (Objects.equals(atSplit, atOther) || Objects.equals(atHead, atOther)) {
+                continue; // the other side did nothing HEAD does not already have
+            }
+            if (Objects.equals(atSplit, atHead)) { // only the other side changed it
+                if (atOther == null) {
+                    merge.result.remove(name);
+                } else {
+                    merge.result.put(name, atOther);
+                }
+            } else {
+                if (store != null) {
+                    merge.result.put(name, conflict(atHead, atOther, store));
+                }
+                merge.conflicts.add(name);
+            }
+            merge.changed.add(name);
+        }
+        return merge;
+    }
+
+    /** Store a blob holding blobs HEAD and OTHER (either may be null for a
+     *  deleted file) between conflict markers, and return its id. */
+    private static String conflict(String head, String other, ObjectStore store) {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        contents.writeBytes("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+        if (head != null) {
+            contents.writeBytes(store.read(ObjectStore.BLOBS, head));
+        }
+        contents.writeBytes("=======\n".getBytes(StandardCharsets.UTF_8));
+        if (other != null) {
+            contents.writeBytes(store.read(ObjectStore.BLOBS, other));
+        }
+        contents.writeBytes(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = contents.toByteArray();
+        String id = HashAlgorithm.current().hash(ByteBuffer.wrap(bytes));
+        if (!store.has(ObjectStore.BLOBS, id)) {
+            store.write(ObjectStore.BLOBS, id, bytes);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/** The hash of every plain file in CWD, kept up to date cheaply.
+ *  The last result is saved in .gitlet/worktree together with a file system
+ *  monitor token. While the monitor is running, only the files it reports as
+ *  changed since that token are hashed again; otherwise every file in CWD is
+ *  listed and hashed, as before.
+ *  @author Yang Lyu
+ */
+class WorkTree implements Serializable {
+
+    /** Where the saved snapshot is stored. */
+    static final File SNAPSHOT_FILE = Utils.join(Repository.GITLET_DIR, "worktree");
+
+    /** file name -> hash of its contents */
+    private final HashMap<String, String> hashes;
+    /** Monitor token taken before HASHES was last brought up to date. */
+    private String token;
+
+    private WorkTree(HashMap<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    /** Hashes of the files in CWD as they are now, by name. */
+    static HashMap<String, String> snapshot() {
+        return snapshot(FsMonitor.token());
+    }
+
+    /** Hashes of the files among NAMES that are in CWD, by name. Without the
+     *  monitor only those files are read, rather than all of CWD. */
+    static HashMap<String, String> hashesOf(Collection<String> names) {
+        String token = FsMonitor.token();
+        HashMap<String, String> result = new HashMap<>();
+        if (token == null) {
+            for (String name : names) {
+                if (Utils.join(Repository.CWD, name).isFile()) {
+                    result.put(name, hash(name));
+                }
+            }
+            return result;
+        }
+        HashMap<String, String> all = snapshot(token);
+        for (String name : names) {
+            String hash = all.get(name);
+            if (hash != null) {
+                result.put(name, hash);
+            }
+        }
+        return result;
+    }
+
+    /** Hashes of the files in CWD, brought up to date using the monitor TOKEN,
+     *  which may be null. */
+    private static HashMap<String, String> snapshot(String token) {
+        long start = Trace.start();
+        WorkTree saved = token != null ? load() : null;
+        Set<String> changed = saved == null ? null : FsMonitor.changedSince(saved.token);
+
+        WorkTree current;
+        if (changed == null) { // no monitor, or its token is stale: full scan
+            current = new WorkTree(new HashMap<>());
+            List<String> names = Utils.plainFilenamesIn(Repository.CWD);
+            for (String name : names) {
+                current.hashes.put(name, hash(name));
+            }
+        } else {
+            Trace.hit("fsmonitor");
+            current = saved;
+            for (String name : changed) {
+                if (Utils.join(Repository.CWD, name).isFile()) {
+                    current.hashes.put(name, hash(name));
+                } else {
+                    current.hashes.remove(name);
+                }
+            }
+        }
+        boolean unchanged = current == saved && changed.isEmpty();
+        if (token != null && !unchanged) {
+            current.token = token;
+            current.save();
+        }
+        Trace.end("worktree", start, current.hashes.size());
+        return current.hashes;
+    }
+
+    /** The saved snapshot, or null if there is none or it cannot be read, in which
+     *  case it is treated as stale and CWD is scanned in full. */
+    private static WorkTree load() {
+        if (!SNAPSHOT_FILE.isFile()) {
+            return null;
+        }
+        try {
+            return Utils.readObject(SNAPSHOT_FILE, WorkTree.class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Replace the saved snapshot with this one through a temporary file and a
+     *  rename, so it is never left half written. Being a cache, it is not synced. */
+    private void save() {
+        File partial = new File(SNAPSHOT_FILE.getPath() + ".partial");
+        Utils.writeObject(partial, this);
+        try {
+            Files.move(partial.toPath(), SNAPSHOT_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Hash of the file NAME in CWD. */
+    private static String hash(String name) {
+        return MappedObjects.hash(Utils.join(Repository.CWD, name), false);
+    }
+}